@@ -0,0 +1,22 @@
+package framework.annotations.components;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the class whose main method starts the framework.
+ * packages are scanned with their subpackages, the package of the annotated class if none are given.
+ * roots are the directories and jars to scan, the class path if none are given,
+ * roots that are not on the class path are loaded by a class loader of their own.
+ * System properties framework.scan.packages (comma separated) and framework.scan.roots
+ * (separated like the class path) override both.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Application {
+    String[] packages() default {};
+
+    String[] roots() default {};
+}
@@ -0,0 +1,16 @@
+package framework.annotations.databases;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Field of an @Entity class the database keeps an index for.
+ * Hash index answers findByField, sorted index also answers findByFieldBetween.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Indexed {
+    boolean sorted() default false;
+}
@@ -0,0 +1,18 @@
+package framework.annotations.databases;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Version of an @Entity row, a Long, long, Integer or int field.
+ * Insert sets it to 1, every update increments it.
+ * Update is applied only if its version matches the stored one, 0 included,
+ * otherwise it fails with ConflictException, answered with 409 Conflict.
+ * Update with a null version fails the same way, it would overwrite the row unchecked.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Version {
+}
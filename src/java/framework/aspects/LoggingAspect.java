@@ -1,14 +1,18 @@
 package framework.aspects;
 
+import framework.logging.Log;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.After;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.annotation.Pointcut;
 
+import java.util.Arrays;
+
 /**
  * First aspect I created.
- * It logs all method executions from the Calculator class.
+ * It logs all method executions from the Calculator class,
+ * through the framework's asynchronous Log.
  */
 @Aspect
 public class LoggingAspect {
@@ -18,18 +22,15 @@ public class LoggingAspect {
     @Before("calculatorMethods()")
     public void beforeMethodExecution(JoinPoint joinPoint) {
         String methodName = joinPoint.getSignature().getName();
-        System.out.println("About to execute method: " + methodName);
+        Log.info("LoggingAspect", "About to execute method: {}", methodName);
 
         Object[] args = joinPoint.getArgs();
-        System.out.println("Parameters from aspect: ");
-        for (Object arg : args) {
-            System.out.println(arg);
-        }
+        Log.info("LoggingAspect", "Parameters from aspect: {}", Arrays.toString(args));
     }
 
     @After("calculatorMethods()")
     public void afterMethodExecution(JoinPoint joinPoint) {
         String methodName = joinPoint.getSignature().getName();
-        System.out.println("Finished executing method: " + methodName);
+        Log.info("LoggingAspect", "Finished executing method: {}", methodName);
     }
 }
@@ -2,7 +2,7 @@ package framework.aspects;
 
 import framework.engines.DiscoveryEngine;
 import framework.engines.ServerEngine;
-import framework.exceptions.FrameworkException;
+import framework.logging.Log;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
@@ -13,26 +13,27 @@ import java.util.concurrent.Executors;
 @Aspect
 public class RunAspect {
     /**
-     * Intercepting any main method in the playground package.
+     * Intercepting the main method of the class annotated with @Application, in any package.
      */
-    @Pointcut("execution(public static void playground.*.main(String[])) ")
-    public void playgroundMainPoint() {
+    @Pointcut("execution(public static void main(String[])) && @within(framework.annotations.components.Application)")
+    public void applicationMainPoint() {
     }
 
-    @Before("playgroundMainPoint()")
-    public void beforePlaygroundMain(JoinPoint joinPoint) throws Exception {
+    @Before("applicationMainPoint()")
+    public void beforeApplicationMain(JoinPoint joinPoint) throws Exception {
         System.out.println("########## Framework is starting ##########");
 
-        /// Start the initialization process
-        DiscoveryEngine.getInstance();
+        /// Start the initialization process, with the packages and roots of the main class
+        DiscoveryEngine.getInstance(joinPoint.getSignature().getDeclaringType());
 
-        /// Start the server
+        /// Start the server, a failure would stay in the executor's Future, so the process exits with it
         ExecutorService executor = Executors.newSingleThreadExecutor();
         executor.submit(() -> {
             try {
                 ServerEngine.run();
             } catch (Exception e) {
-                throw new FrameworkException("Failed to start server: " + e.getMessage());
+                Log.error("RunAspect", "Failed to start server: {}", e.getMessage());
+                System.exit(1);
             }
         });
     }
@@ -0,0 +1,178 @@
+package framework.build;
+
+import framework.discovery.ClassScanner;
+import framework.engines.DiscoveryEngine;
+import framework.exceptions.FrameworkException;
+import org.aspectj.bridge.AbortException;
+import org.aspectj.bridge.IMessage;
+import org.aspectj.bridge.MessageWriter;
+import org.aspectj.weaver.loadtime.ClassLoaderWeavingAdaptor;
+import org.aspectj.weaver.loadtime.DefaultWeavingContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Build step that does at build time what load-time weaving does at startup.
+ * Weaves the compiled classes in place with the aspects of META-INF/aop.xml,
+ * using the same weaver as the javaagent, so the woven code is identical,
+ * and writes the component index DiscoveryEngine reads instead of scanning the class path.
+ * Aspects need javac -g, the weaver reads the names of advice parameters from the debug info.
+ * Precompiled application runs with aspectjrt instead of the aspectjweaver agent:
+ *   javac -g -cp "lib/*" -d out $(find src/java -name '*.java') && cp -r src/resources/* out/
+ *   java -cp "out:lib/*" framework.build.Precompiler out
+ *   java -cp "out:lib/aspectjrt-1.9.24.jar:lib/gson-2.13.1.jar" playground.Main
+ * aop.xml is removed from the classes afterwards, so starting them with the agent
+ * by mistake does not weave them a second time.
+ */
+public class Precompiler {
+    private static final String AOP_XML = "META-INF/aop.xml";
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final Path classes;
+
+    private Precompiler(Path classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * @param args directory with compiled classes and resources.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            throw new FrameworkException("Usage: java framework.build.Precompiler <classes directory>");
+        }
+        new Precompiler(Path.of(args[0])).run();
+    }
+
+    private void run() throws IOException {
+        if (!Files.exists(classes.resolve(AOP_XML))) {
+            throw new FrameworkException("No " + AOP_XML + " in: " + classes + ", classes are not compiled yet or already precompiled");
+        }
+
+        long start = System.nanoTime();
+        List<String> names = listClasses();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, Precompiler.class.getClassLoader())) {
+            int woven = weave(loader, names);
+            int components = writeIndex();
+            Files.delete(classes.resolve(AOP_XML));
+
+            System.out.println("Precompiled " + classes + ": " + woven + " classes woven, " + components + " components indexed in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+    }
+
+    /**
+     * Weaving every class the way the agent would when the class is loaded.
+     * The agent only prints weaver errors and goes on, here any error fails the build
+     * before a class file is written, otherwise classes would ship with part of their advice.
+     * @return number of classes changed.
+     * @throws FrameworkException if the weaver reported an error.
+     */
+    private int weave(ClassLoader loader, List<String> names) throws IOException {
+        BuildWeaver weaver = new BuildWeaver();
+        weaver.initialize(loader, new DefaultWeavingContext(loader));
+
+        Map<Path, byte[]> woven = new LinkedHashMap<>();
+        for (String name : names) {
+            Path file = classFile(name);
+            byte[] bytes = Files.readAllBytes(file);
+            byte[] wovenBytes = weaver.weaveClass(name, bytes);
+            if (wovenBytes != null && !Arrays.equals(bytes, wovenBytes)) {
+                woven.put(file, wovenBytes);
+            }
+        }
+        if (!weaver.errors.isEmpty()) {
+            throw new FrameworkException("Weaving " + classes + " failed, no class was written: " + String.join("; ", weaver.errors));
+        }
+        if (woven.isEmpty()) {
+            throw new FrameworkException("No class in: " + classes + " was woven, check " + AOP_XML);
+        }
+        for (Map.Entry<Path, byte[]> entry : woven.entrySet()) {
+            Files.write(entry.getKey(), entry.getValue());
+        }
+        return woven.size();
+    }
+
+    /**
+     * Writing names of all classes DiscoveryEngine sorts, one per line.
+     * Woven class files are read by ClassScanner, nothing is loaded.
+     * @return number of classes in the index.
+     */
+    private int writeIndex() throws IOException {
+        List<String> components = ClassScanner.scan(classes, List.of(""));
+
+        Path index = classes.resolve(DiscoveryEngine.COMPONENT_INDEX);
+        Files.createDirectories(index.getParent());
+        Files.write(index, components);
+        return components.size();
+    }
+
+    private List<String> listClasses() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(classes)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String path = classes.relativize(file).toString();
+                if (path.endsWith(CLASS_SUFFIX) && !path.startsWith("META-INF")) {
+                    names.add(path.substring(0, path.length() - CLASS_SUFFIX.length()).replace(file.getFileSystem().getSeparator(), "."));
+                }
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+
+    private Path classFile(String name) {
+        return classes.resolve(name.replace('.', '/') + CLASS_SUFFIX);
+    }
+
+    /**
+     * Weaver of the javaagent, but classes it generates (closures of around advice)
+     * are written next to the woven classes instead of being defined in a class loader.
+     * Its message handler prints the messages like the agent does, and also collects the errors.
+     */
+    private class BuildWeaver extends ClassLoaderWeavingAdaptor {
+        private final Set<String> errors = new LinkedHashSet<>();      //same error is reported once per class
+
+        @Override
+        protected void createMessageHandler() {
+            super.createMessageHandler();
+            setMessageHandler(new MessageWriter(new PrintWriter(System.err, true), false) {
+                @Override
+                public boolean handleMessage(IMessage message) throws AbortException {
+                    if (IMessage.ERROR.isSameOrLessThan(message.getKind())) {
+                        errors.add(message.getMessage());
+                    }
+                    return isIgnoring(message.getKind()) || super.handleMessage(message);
+                }
+
+                @Override
+                public boolean isIgnoring(IMessage.Kind kind) {
+                    return !IMessage.WARNING.isSameOrLessThan(kind);
+                }
+            });
+        }
+
+        @Override
+        protected void defineClass(ClassLoader loader, String name, byte[] bytes, ProtectionDomain domain) {
+            try {
+                Files.write(classFile(name), bytes);
+            } catch (IOException e) {
+                throw new FrameworkException("Failed to write generated class: " + name + " " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package framework.conversion;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import framework.interfaces.TypeConverter;
+
+import java.io.IOException;
+
+/**
+ * Lets Gson use the registered TypeConverters,
+ * so responses, the write-ahead log and snapshots write a value the same way request bodies read it.
+ */
+public class ConverterAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        TypeConverter<Object> converter = (TypeConverter<Object>) Converters.get(type.getRawType());
+        if (converter == null) {
+            return null;
+        }
+
+        return (TypeAdapter<T>) new TypeAdapter<Object>() {
+            @Override
+            public void write(JsonWriter out, Object value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                }
+                else {
+                    converter.write(out, value);
+                }
+            }
+
+            @Override
+            public Object read(JsonReader in) throws IOException {
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    return null;
+                }
+                return converter.read(in);
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package framework.conversion;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import framework.exceptions.FrameworkException;
+import framework.interfaces.TypeConverter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Registry of TypeConverters, type -> converter.
+ * Built-in converters cover java.time types, BigDecimal, BigInteger, UUID and every enum,
+ * applications add their own with a @Component implementing TypeConverter.
+ * Fields resolve their converter once, when their entity is registered,
+ * so converters must be registered before that. String, primitives and their
+ * boxes are read by EntityField directly and never go through the registry.
+ */
+public class Converters {
+    private static final Map<Class<?>, TypeConverter<?>> converters = new ConcurrentHashMap<>();    //type -> converter
+
+    static {
+        register(of(LocalDate.class, LocalDate::parse, LocalDate::toString));
+        register(of(LocalDateTime.class, LocalDateTime::parse, LocalDateTime::toString));
+        register(of(LocalTime.class, LocalTime::parse, LocalTime::toString));
+        register(of(OffsetDateTime.class, OffsetDateTime::parse, OffsetDateTime::toString));
+        register(of(Instant.class, Instant::parse, Instant::toString));
+        register(of(Duration.class, Duration::parse, Duration::toString));
+        register(of(UUID.class, UUID::fromString, UUID::toString));
+        register(number(BigDecimal.class, BigDecimal::new));
+        register(number(BigInteger.class, BigInteger::new));
+    }
+
+    private Converters() {
+    }
+
+    /**
+     * Registering a converter, it replaces the one registered for the same type before.
+     * @param converter to register.
+     */
+    public static void register(TypeConverter<?> converter) {
+        if (converter.getType() == null || converter.getType().isPrimitive()) {
+            throw new FrameworkException("Converter: " + converter.getClass().getName() + " must be for a class, not: " + converter.getType());
+        }
+        converters.put(converter.getType(), converter);
+    }
+
+    /**
+     * @param type of a field or value.
+     * @return converter for the type, or null if the type has none.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static TypeConverter<?> get(Class<?> type) {
+        TypeConverter<?> converter = converters.get(type);
+        if (converter != null || !Enum.class.isAssignableFrom(type) || type == Enum.class) {
+            return converter;
+        }
+
+        /// constant with a body is a subclass of its enum
+        Class<?> enumType = type;
+        while (!enumType.isEnum()) {
+            enumType = enumType.getSuperclass();
+        }
+        return converters.computeIfAbsent(enumType, key -> new EnumConverter(key));
+    }
+
+    /**
+     * Converter of a value kept as a JSON string.
+     * @param type of the value.
+     * @param parse text -> value.
+     * @param format value -> text.
+     * @return new converter, not registered yet.
+     */
+    public static <T> TypeConverter<T> of(Class<T> type, Function<String, T> parse, Function<T, String> format) {
+        return new SimpleConverter<>(type, parse, format);
+    }
+
+    /**
+     * Converter of a value kept as a JSON number, without losing precision.
+     * @param type of the value.
+     * @param parse text -> value.
+     * @return new converter, not registered yet.
+     */
+    public static <T extends Number> TypeConverter<T> number(Class<T> type, Function<String, T> parse) {
+        return new SimpleConverter<>(type, parse, Number::toString) {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                out.value(value);
+            }
+        };
+    }
+
+    private static class SimpleConverter<T> implements TypeConverter<T> {
+        private final Class<T> type;
+        private final Function<String, T> parse;
+        private final Function<T, String> format;
+
+        private SimpleConverter(Class<T> type, Function<String, T> parse, Function<T, String> format) {
+            this.type = type;
+            this.parse = parse;
+            this.format = format;
+        }
+
+        @Override
+        public Class<T> getType() {
+            return type;
+        }
+
+        @Override
+        public T parse(String text) {
+            return parse.apply(text);
+        }
+
+        @Override
+        public String format(T value) {
+            return format.apply(value);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return parse.apply(in.nextString());        //numbers are read as their text, so nothing is rounded
+        }
+    }
+}
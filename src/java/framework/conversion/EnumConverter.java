@@ -0,0 +1,43 @@
+package framework.conversion;
+
+import framework.exceptions.FrameworkException;
+import framework.interfaces.TypeConverter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enum constant as its name, names are looked up in a map built once per enum.
+ * @param <E> enum type.
+ */
+public class EnumConverter<E extends Enum<E>> implements TypeConverter<E> {
+    private final Class<E> type;
+    private final Map<String, E> constants;           //name -> constant
+
+    public EnumConverter(Class<E> type) {
+        this.type = type;
+        this.constants = new HashMap<>();
+        for (E constant : type.getEnumConstants()) {
+            constants.put(constant.name(), constant);
+        }
+    }
+
+    @Override
+    public Class<E> getType() {
+        return type;
+    }
+
+    @Override
+    public E parse(String text) {
+        E constant = constants.get(text);
+        if (constant == null) {
+            throw new FrameworkException("Enum: " + type.getName() + " has no constant: " + text);
+        }
+        return constant;
+    }
+
+    @Override
+    public String format(E value) {
+        return value.name();
+    }
+}
@@ -0,0 +1,461 @@
+package framework.database;
+
+import framework.exceptions.FrameworkException;
+import framework.http.Json;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One table of a snapshot, stored column by column and read through a MappedByteBuffer.
+ * Numbers and booleans are stored as primitive columns with a null bitmap,
+ * Strings as a dictionary of distinct values plus one int code per row,
+ * any other type as a dictionary of JSON values.
+ * Ids are stored sorted, so a row is found by binary search and
+ * built only when somebody asks for it, opening a table reads just the footer.
+ * A row that was built, replaced or deleted is claimed, and never built from the file again.
+ *
+ * File layout: MAGIC, row count, next id, column count, ids,
+ * columns, directory (name, type, offset per column), directory offset.
+ */
+public class ColumnarSnapshot {
+    private static final int MAGIC = 0x46574354;    //FWCT
+    private static final long MAX_SIZE = Integer.MAX_VALUE;     //largest file one MappedByteBuffer maps, offsets are read as int
+
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte FLOAT = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte STRING = 6;
+    private static final byte JSON = 7;
+
+    private final EntityMetadata metadata;
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final long nextId;
+    private final int idsOffset;
+    private final List<Column> columns;
+
+    private final AtomicLongArray claimed;          //one bit per row
+    private final AtomicInteger unclaimed;
+
+    private ColumnarSnapshot(EntityMetadata metadata, MappedByteBuffer buffer) {
+        this.metadata = metadata;
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new FrameworkException("Snapshot of table: " + metadata.getTableName() + " is not a columnar snapshot");
+        }
+        this.rowCount = buffer.getInt(4);
+        this.nextId = buffer.getLong(8);
+        int columnCount = buffer.getInt(16);
+        this.idsOffset = 20;
+
+        this.columns = new ArrayList<>();
+        int position = (int) buffer.getLong(buffer.capacity() - 8);
+        for (int c = 0; c < columnCount; c++) {
+            int nameLength = buffer.getShort(position) & 0xFFFF;
+            String name = string(position + 2, nameLength);
+            position += 2 + nameLength;
+            byte type = buffer.get(position);
+            int offset = (int) buffer.getLong(position + 1);
+            position += 9;
+
+            EntityField field = metadata.getField(name);
+            if (field == null) {
+                continue;       //field was removed from the class since the snapshot
+            }
+            if (type != typeOf(field.getType())) {
+                throw new FrameworkException("Field: " + name + " of table: " + metadata.getTableName() + " changed type since the snapshot");
+            }
+            columns.add(new Column(field, type, offset));
+        }
+
+        this.claimed = new AtomicLongArray((rowCount + 63) / 64);
+        this.unclaimed = new AtomicInteger(rowCount);
+    }
+
+    /**
+     * Mapping a table file, no row is read here.
+     * @param path of the table file.
+     * @param metadata of the table's entity class.
+     * @return opened snapshot.
+     */
+    public static ColumnarSnapshot open(Path path, EntityMetadata metadata) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > MAX_SIZE) {
+                throw new FrameworkException("Snapshot of table: " + metadata.getTableName() + " is larger than 2GB");
+            }
+            return new ColumnarSnapshot(metadata, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to map snapshot: " + path + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writing rows of one table column by column.
+     * Fails as soon as the file grows past what open can map, before anything relies on it.
+     * @param path of the table file.
+     * @param metadata of the table's entity class.
+     * @param entities rows sorted by id.
+     * @param nextId id the table hands out next.
+     */
+    public static void write(Path path, EntityMetadata metadata, List<Object> entities, long nextId) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             CountingOutputStream counter = new CountingOutputStream(Channels.newOutputStream(channel));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(counter, 64 * 1024))) {
+            List<EntityField> fields = metadata.getFields();
+            long[] offsets = new long[fields.size()];
+
+            out.writeInt(MAGIC);
+            out.writeInt(entities.size());
+            out.writeLong(nextId);
+            out.writeInt(fields.size());
+            for (Object entity : entities) {
+                out.writeLong(metadata.getId(entity));
+            }
+
+            for (int c = 0; c < fields.size(); c++) {
+                out.flush();
+                offsets[c] = checkSize(counter.count, metadata);
+                writeColumn(out, fields.get(c), entities);
+            }
+
+            out.flush();
+            long directory = checkSize(counter.count, metadata);
+            for (int c = 0; c < fields.size(); c++) {
+                byte[] name = fields.get(c).getName().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeByte(typeOf(fields.get(c).getType()));
+                out.writeLong(offsets[c]);
+            }
+            out.writeLong(directory);
+            out.flush();
+            checkSize(counter.count, metadata);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to write snapshot: " + path + " " + e.getMessage());
+        }
+    }
+
+    private static long checkSize(long size, EntityMetadata metadata) {
+        if (size > MAX_SIZE) {
+            throw new FrameworkException("Snapshot of table: " + metadata.getTableName() + " is larger than 2GB, it could not be opened again");
+        }
+        return size;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * @return number of rows that are still only in the file.
+     */
+    public int getUnclaimedCount() {
+        return unclaimed.get();
+    }
+
+    /**
+     * @param id of the row.
+     * @return position of the row, or -1 if the snapshot has no such id.
+     */
+    public int find(long id) {
+        int low = 0;
+        int high = rowCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = idAt(middle);
+            if (value < id) {
+                low = middle + 1;
+            }
+            else if (value > id) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param id any id.
+     * @return position of the first row with a greater id, row count if there is none.
+     */
+    public int firstAfter(long id) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (idAt(middle) <= id) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public long idAt(int position) {
+        return buffer.getLong(idsOffset + position * 8);
+    }
+
+    public boolean isClaimed(int position) {
+        return (claimed.get(position >>> 6) & (1L << position)) != 0;
+    }
+
+    /**
+     * Marking a row as built, replaced or deleted.
+     * @param position of the row.
+     * @return true if the row was not claimed before.
+     */
+    public boolean claim(int position) {
+        long bit = 1L << position;
+        int word = position >>> 6;
+        while (true) {
+            long current = claimed.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (claimed.compareAndSet(word, current, current | bit)) {
+                unclaimed.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Building the entity of one row from the columns.
+     * @param position of the row.
+     * @return new entity.
+     */
+    public Object materialize(int position) {
+        Object entity = metadata.newInstance();
+        metadata.setId(entity, idAt(position));
+        for (Column column : columns) {
+            Object value = column.get(position);
+            if (value != null || !column.field.getType().isPrimitive()) {
+                column.field.set(entity, value);
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Reading one field of a row without building the row, used to build indexes.
+     * @param field of the entity.
+     * @param position of the row.
+     * @return value, or null if the snapshot has no column for the field.
+     */
+    public Object valueAt(EntityField field, int position) {
+        for (Column column : columns) {
+            if (column.field == field) {
+                return column.get(position);
+            }
+        }
+        return null;
+    }
+
+    private static void writeColumn(DataOutputStream out, EntityField field, List<Object> entities) throws IOException {
+        byte type = typeOf(field.getType());
+        if (type == STRING || type == JSON) {
+            writeDictionaryColumn(out, field, entities, type == JSON);
+            return;
+        }
+
+        byte[] nulls = new byte[(entities.size() + 7) / 8];
+        for (int row = 0; row < entities.size(); row++) {
+            if (field.get(entities.get(row)) == null) {
+                nulls[row >>> 3] |= (byte) (1 << (row & 7));
+            }
+        }
+        out.write(nulls);
+
+        for (Object entity : entities) {
+            Object value = field.get(entity);
+            switch (type) {
+                case LONG -> out.writeLong(value == null ? 0L : (Long) value);
+                case INT -> out.writeInt(value == null ? 0 : (Integer) value);
+                case DOUBLE -> out.writeDouble(value == null ? 0D : (Double) value);
+                case FLOAT -> out.writeFloat(value == null ? 0F : (Float) value);
+                default -> out.writeByte(value != null && (Boolean) value ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Dictionary column: count, end offset of every value, UTF-8 bytes of values, then a code per row, -1 for null.
+     */
+    private static void writeDictionaryColumn(DataOutputStream out, EntityField field, List<Object> entities, boolean json) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<byte[]> values = new ArrayList<>();
+        int[] codes = new int[entities.size()];
+
+        for (int row = 0; row < entities.size(); row++) {
+            Object value = field.get(entities.get(row));
+            if (value == null) {
+                codes[row] = -1;
+                continue;
+            }
+            String text = json ? Json.GSON.toJson(value) : (String) value;
+            Integer code = dictionary.get(text);
+            if (code == null) {
+                code = values.size();
+                dictionary.put(text, code);
+                values.add(text.getBytes(StandardCharsets.UTF_8));
+            }
+            codes[row] = code;
+        }
+
+        out.writeInt(values.size());
+        int end = 0;
+        for (byte[] value : values) {
+            end += value.length;
+            out.writeInt(end);
+        }
+        for (byte[] value : values) {
+            out.write(value);
+        }
+        for (int code : codes) {
+            out.writeInt(code);
+        }
+    }
+
+    private static byte typeOf(Class<?> type) {
+        if (type == long.class || type == Long.class) {
+            return LONG;
+        }
+        else if (type == int.class || type == Integer.class) {
+            return INT;
+        }
+        else if (type == double.class || type == Double.class) {
+            return DOUBLE;
+        }
+        else if (type == float.class || type == Float.class) {
+            return FLOAT;
+        }
+        else if (type == boolean.class || type == Boolean.class) {
+            return BOOLEAN;
+        }
+        else if (type == String.class) {
+            return STRING;
+        }
+        return JSON;
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Column of one field, Strings of the dictionary are decoded once and shared by all rows.
+     */
+    private class Column {
+        private final EntityField field;
+        private final byte type;
+        private final int offset;
+        private final int valuesOffset;         //after the null bitmap, or after the dictionary
+        private final int dictionarySize;
+        private final String[] decoded;
+
+        private Column(EntityField field, byte type, int offset) {
+            this.field = field;
+            this.type = type;
+            this.offset = offset;
+
+            if (type == STRING || type == JSON) {
+                this.dictionarySize = buffer.getInt(offset);
+                int bytesOffset = offset + 4 + dictionarySize * 4;
+                int bytesLength = dictionarySize == 0 ? 0 : buffer.getInt(bytesOffset - 4);
+                this.valuesOffset = bytesOffset + bytesLength;
+                this.decoded = new String[dictionarySize];
+            }
+            else {
+                this.dictionarySize = 0;
+                this.valuesOffset = offset + (rowCount + 7) / 8;
+                this.decoded = null;
+            }
+        }
+
+        private Object get(int row) {
+            if (type == STRING || type == JSON) {
+                int code = buffer.getInt(valuesOffset + row * 4);
+                return code < 0 ? null : decode(code);
+            }
+            if ((buffer.get(offset + (row >>> 3)) & (1 << (row & 7))) != 0) {
+                return null;
+            }
+            return switch (type) {
+                case LONG -> buffer.getLong(valuesOffset + row * 8);
+                case INT -> buffer.getInt(valuesOffset + row * 4);
+                case DOUBLE -> buffer.getDouble(valuesOffset + row * 8);
+                case FLOAT -> buffer.getFloat(valuesOffset + row * 4);
+                default -> buffer.get(valuesOffset + row) != 0;
+            };
+        }
+
+        private Object decode(int code) {
+            String value = decoded[code];
+            if (value == null) {
+                int bytesOffset = offset + 4 + dictionarySize * 4;
+                int start = code == 0 ? 0 : buffer.getInt(offset + 4 + (code - 1) * 4);
+                int end = buffer.getInt(offset + 4 + code * 4);
+                String text = string(bytesOffset + start, end - start);
+                if (type == JSON) {
+                    return Json.GSON.fromJson(text, field.getType());      //may be mutable, never shared between rows
+                }
+                value = text;
+                decoded[code] = value;      //benign race, every thread decodes the same value
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Tracks how many bytes were written, for the column offsets.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
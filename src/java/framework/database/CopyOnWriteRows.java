@@ -0,0 +1,99 @@
+package framework.database;
+
+import java.util.Arrays;
+
+/**
+ * Rows of a table in chunks of CHUNK_SIZE ids, id -> slot id % CHUNK_SIZE of chunk id / CHUNK_SIZE.
+ * Taking a snapshot copies only the array of chunk references and marks every chunk as shared,
+ * a write copies the one chunk it touches if a snapshot still shares it (copy-on-write).
+ * So a snapshot costs rows / CHUNK_SIZE and a write at most CHUNK_SIZE, instead of a copy of the table.
+ * Ids are handed out by a counter, so chunks are dense.
+ * Writes happen under the table's write lock, snapshots under its read lock.
+ */
+public class CopyOnWriteRows {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private Object[][] chunks = new Object[16][];
+    private int[] counts = new int[16];                 //rows in every chunk
+    private long[] copiedIn = new long[16];             //generation in which a chunk was last copied
+    private long generation = 1;                        //chunks copied before this generation are shared with a snapshot
+    private int size;
+    private TableSnapshot current;                      //last snapshot, valid until the next write
+
+    /**
+     * @param id of the row.
+     * @param entity new or replaced row.
+     */
+    public void put(long id, Object entity) {
+        Object[] chunk = writableChunk(id);
+        int slot = (int) (id & (CHUNK_SIZE - 1));
+        if (chunk[slot] == null) {
+            counts[chunkIndex(id)]++;
+            size++;
+        }
+        chunk[slot] = entity;
+    }
+
+    /**
+     * @param id of the row.
+     */
+    public void remove(long id) {
+        int index = chunkIndex(id);
+        if (index >= chunks.length || chunks[index] == null || chunks[index][(int) (id & (CHUNK_SIZE - 1))] == null) {
+            return;
+        }
+        writableChunk(id)[(int) (id & (CHUNK_SIZE - 1))] = null;
+        counts[index]--;
+        size--;
+    }
+
+    public void clear() {
+        chunks = new Object[16][];
+        counts = new int[16];
+        copiedIn = new long[16];
+        size = 0;
+        current = null;
+    }
+
+    /**
+     * Immutable view of the rows as they are now, shared by all readers until the next write.
+     * @return point-in-time snapshot in id order.
+     */
+    public synchronized TableSnapshot snapshot() {
+        if (current == null) {
+            current = new TableSnapshot(chunks.clone(), counts.clone(), size);
+            generation++;
+        }
+        return current;
+    }
+
+    private Object[] writableChunk(long id) {
+        current = null;
+        int index = chunkIndex(id);
+        if (index >= chunks.length) {
+            int length = Math.max(index + 1, chunks.length * 2);
+            chunks = Arrays.copyOf(chunks, length);
+            counts = Arrays.copyOf(counts, length);
+            copiedIn = Arrays.copyOf(copiedIn, length);
+        }
+
+        Object[] chunk = chunks[index];
+        if (chunk == null) {
+            chunk = new Object[CHUNK_SIZE];
+        }
+        else if (copiedIn[index] != generation) {
+            chunk = chunk.clone();          //chunk may be in a snapshot
+        }
+        else {
+            return chunk;
+        }
+        chunks[index] = chunk;
+        copiedIn[index] = generation;
+        return chunk;
+    }
+
+    private static int chunkIndex(long id) {
+        return Math.toIntExact(id >>> CHUNK_BITS);
+    }
+}
@@ -0,0 +1,132 @@
+package framework.database;
+
+import framework.exceptions.FrameworkException;
+import framework.logging.Log;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable mode of the database, turned on with the framework.database.dir property.
+ * On startup tables are rebuilt from the latest snapshot plus the log written after it,
+ * then every change is logged, and a new snapshot periodically makes the old log unnecessary.
+ * Recovery time and log throughput are printed, so both can be measured.
+ */
+public class DurableStorage {
+    private static final long SNAPSHOT_INTERVAL = Long.getLong("framework.database.snapshotInterval", 60);   //seconds
+
+    private final Path directory;
+    private final Map<String, EntityTable> tables;      //table name -> table
+    private final SnapshotStore snapshotStore;
+    private WriteAheadLog writeAheadLog;
+
+    private boolean replayedSinceSnapshot;      //log records recovered at startup, not yet in a snapshot
+    private long lastRecordCount;
+    private long lastBatchCount;
+    private long lastSnapshotTime;
+
+    private DurableStorage(Path directory, Collection<EntityTable> tables) {
+        this.directory = directory;
+        this.tables = new HashMap<>();
+        for (EntityTable table : tables) {
+            this.tables.put(table.getMetadata().getTableName(), table);
+        }
+        this.snapshotStore = new SnapshotStore(directory);
+    }
+
+    /**
+     * Recovering the tables and starting to log changes.
+     * @param directory where the log and snapshots are kept.
+     * @param tables all tables of the database, still empty.
+     * @return running storage.
+     */
+    public static DurableStorage open(Path directory, Collection<EntityTable> tables) {
+        DurableStorage storage = new DurableStorage(directory, tables);
+        storage.recover();
+        storage.scheduleSnapshots();
+        return storage;
+    }
+
+    private void recover() {
+        long start = System.nanoTime();
+
+        long fromSegment = snapshotStore.load(tables);
+        long replayed = WriteAheadLog.replay(directory, fromSegment, (operation, tableName, id, row) -> {
+            EntityTable table = tables.get(tableName);
+            if (table == null) {
+                throw new FrameworkException("Log has table: " + tableName + " which has no @Entity class");
+            }
+            if (operation == WriteAheadLog.DELETE) {
+                table.restoreDelete(id);
+            }
+            else {
+                table.restore(RowCodec.read(table.getMetadata(), row));
+            }
+        });
+
+        List<Long> segments = WriteAheadLog.listSegments(directory);
+        long nextSegment = Math.max(fromSegment, segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+        writeAheadLog = new WriteAheadLog(directory, nextSegment);
+        for (EntityTable table : tables.values()) {
+            table.setWriteAheadLog(writeAheadLog);
+        }
+
+        replayedSinceSnapshot = replayed > 0;
+        long rows = tables.values().stream().mapToLong(EntityTable::size).sum();
+        Log.info("DurableStorage", "Recovered {} rows from {}, {} log records replayed, in {} ms",
+                rows, directory.toAbsolutePath(), replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        lastSnapshotTime = System.nanoTime();
+    }
+
+    private void scheduleSnapshots() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshot, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writing a snapshot of all tables and truncating the log it covers.
+     * Skipped when nothing changed, so tables still mapped from the last snapshot are not loaded for nothing.
+     */
+    public synchronized void snapshot() {
+        if (!replayedSinceSnapshot && writeAheadLog.getRecordCount() == lastRecordCount && writeAheadLog.getPendingCount() == 0) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            long segment = writeAheadLog.rotate();
+            /// write throws unless every table file was opened again, only then the log it covers can go
+            long rows = snapshotStore.write(tables, segment);
+            writeAheadLog.deleteSegmentsBefore(segment);
+
+            long now = System.nanoTime();
+            long records = writeAheadLog.getRecordCount() - lastRecordCount;
+            long batches = writeAheadLog.getBatchCount() - lastBatchCount;
+            double seconds = Math.max(1e-9, (now - lastSnapshotTime) / 1e9);
+            Log.info("DurableStorage", "Snapshot of {} rows in {} ms, log since last snapshot: {} records in {} fsyncs ({} records/s)",
+                    rows, TimeUnit.NANOSECONDS.toMillis(now - start), records, batches, Math.round(records / seconds));
+
+            lastRecordCount += records;
+            lastBatchCount += batches;
+            lastSnapshotTime = now;
+            replayedSinceSnapshot = false;
+        }
+        catch (FrameworkException e) {
+            Log.error("DurableStorage", "Snapshot failed: {}", e.getMessage());
+        }
+        catch (CompletionException e) {
+            /// rotate failed in the writer thread, thrown out of here it would cancel every later snapshot
+            Log.error("DurableStorage", "Snapshot failed: {}", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package framework.database;
+
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import framework.annotations.databases.Indexed;
+import framework.conversion.Converters;
+import framework.exceptions.BadRequestException;
+import framework.exceptions.FrameworkException;
+import framework.http.Json;
+import framework.interfaces.TypeConverter;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * One field of an entity class.
+ * Getter, setter and the reader of its JSON value
+ * are resolved once, when the entity is registered.
+ * Primitive fields are read and set without boxing,
+ * other types use their TypeConverter, or Gson for nested objects and collections.
+ */
+public class EntityField {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final String name;
+    private final Class<?> type;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final FieldReader reader;                    //JSON value -> field of an entity
+    private final Indexed indexed;                       //null if the field has no index
+
+    public EntityField(Field field) {
+        this.name = field.getName();
+        this.type = field.getType();
+
+        try {
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle rawSetter = lookup.unreflectSetter(field);
+            this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            this.setter = rawSetter.asType(SETTER_TYPE);
+            this.reader = readerFor(field, rawSetter);
+        } catch (IllegalAccessException e) {
+            throw new FrameworkException("Field: " + name + " of class: " + field.getDeclaringClass().getName() + " is not accessible");
+        }
+
+        this.indexed = field.getAnnotation(Indexed.class);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public Indexed getIndexed() {
+        return indexed;
+    }
+
+    public Object get(Object entity) {
+        try {
+            return getter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw new FrameworkException("Failed to read field: " + name + " " + e.getMessage());
+        }
+    }
+
+    public void set(Object entity, Object value) {
+        try {
+            setter.invokeExact(entity, value);
+        } catch (Throwable e) {
+            throw new FrameworkException("Failed to write field: " + name + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reading the field's value straight from JSON into an entity, numbers are read as the field's type,
+     * so 31 stays an int and is never printed and parsed again as text.
+     * @param in JSON reader positioned at the value.
+     * @param entity object to set the field of.
+     */
+    public void readInto(JsonReader in, Object entity) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            if (type.isPrimitive()) {
+                throw new BadRequestException("Field: " + name + " of type: " + type.getName() + " cannot be null");
+            }
+            set(entity, null);
+            return;
+        }
+        try {
+            reader.read(in, entity);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new FrameworkException("Failed to write field: " + name + " " + e.getMessage());
+        }
+    }
+
+    private FieldReader readerFor(Field field, MethodHandle rawSetter) {
+        if (type == int.class) {
+            MethodHandle set = rawSetter.asType(MethodType.methodType(void.class, Object.class, int.class));
+            return (in, entity) -> {
+                set.invokeExact(entity, in.nextInt());
+            };
+        }
+        else if (type == long.class) {
+            MethodHandle set = rawSetter.asType(MethodType.methodType(void.class, Object.class, long.class));
+            return (in, entity) -> {
+                set.invokeExact(entity, in.nextLong());
+            };
+        }
+        else if (type == double.class) {
+            MethodHandle set = rawSetter.asType(MethodType.methodType(void.class, Object.class, double.class));
+            return (in, entity) -> {
+                set.invokeExact(entity, in.nextDouble());
+            };
+        }
+        else if (type == float.class) {
+            MethodHandle set = rawSetter.asType(MethodType.methodType(void.class, Object.class, float.class));
+            return (in, entity) -> {
+                set.invokeExact(entity, (float) in.nextDouble());
+            };
+        }
+        else if (type == boolean.class) {
+            MethodHandle set = rawSetter.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            return (in, entity) -> {
+                set.invokeExact(entity, readBoolean(in));
+            };
+        }
+
+        ValueReader value = valueReaderFor(field);
+        return (in, entity) -> set(entity, value.read(in));
+    }
+
+    private ValueReader valueReaderFor(Field field) {
+        if (type == String.class) {
+            return in -> {
+                JsonToken token = in.peek();
+                if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+                    return JsonParser.parseReader(in).toString();     //nested value is kept as JSON text
+                }
+                return token == JsonToken.BOOLEAN ? String.valueOf(in.nextBoolean()) : in.nextString();
+            };
+        }
+        else if (type == Integer.class) {
+            return JsonReader::nextInt;
+        }
+        else if (type == Long.class) {
+            return JsonReader::nextLong;
+        }
+        else if (type == Boolean.class) {
+            return EntityField::readBoolean;
+        }
+        else if (type == Double.class) {
+            return JsonReader::nextDouble;
+        }
+        else if (type == Float.class) {
+            return in -> (float) in.nextDouble();
+        }
+
+        TypeConverter<?> converter = Converters.get(type);
+        if (converter != null) {
+            return in -> {
+                try {
+                    return converter.read(in);
+                } catch (RuntimeException e) {
+                    throw new BadRequestException("Invalid value for field: " + name + " " + e.getMessage());
+                }
+            };
+        }
+
+        /// nested objects and collections, Gson resolves their adapter once, here
+        TypeAdapter<?> adapter;
+        try {
+            adapter = Json.GSON.getAdapter(TypeToken.get(field.getGenericType()));
+        } catch (RuntimeException e) {
+            throw new FrameworkException("Unsupported field type: " + field.getGenericType() + " of field: " + name + ", register a TypeConverter for it");
+        }
+        return adapter::read;
+    }
+
+    private static boolean readBoolean(JsonReader in) throws IOException {
+        return in.peek() == JsonToken.STRING ? Boolean.parseBoolean(in.nextString()) : in.nextBoolean();
+    }
+
+    /**
+     * Reads one JSON value into a field of an entity, the value is never null.
+     */
+    @FunctionalInterface
+    private interface FieldReader {
+        void read(JsonReader in, Object entity) throws Throwable;
+    }
+
+    /**
+     * Reads one JSON value, never null.
+     */
+    @FunctionalInterface
+    private interface ValueReader {
+        Object read(JsonReader in) throws IOException;
+    }
+}
@@ -0,0 +1,167 @@
+package framework.database;
+
+import framework.annotations.databases.Entity;
+import framework.annotations.databases.Id;
+import framework.annotations.databases.Version;
+import framework.exceptions.FrameworkException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the database needs to know about one entity class.
+ * Built once, when the database is created, so that no
+ * reflection lookup happens while serving requests.
+ */
+public class EntityMetadata {
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<?> entityClass;
+    private final String tableName;
+    private final MethodHandle constructor;
+    private final EntityField idField;
+    private final EntityField versionField;               //null if the entity has no @Version
+    private final List<EntityField> fields;               //all fields except @Id, in declaration order
+    private final Map<String, EntityField> fieldsByName;  //field name -> field
+
+    private EntityMetadata(Class<?> entityClass, MethodHandle constructor, EntityField idField, EntityField versionField, List<EntityField> fields) {
+        this.entityClass = entityClass;
+        this.tableName = entityClass.isAnnotationPresent(Entity.class) ? entityClass.getAnnotation(Entity.class).tableName() : entityClass.getName();
+        this.constructor = constructor;
+        this.idField = idField;
+        this.versionField = versionField;
+        this.fields = Collections.unmodifiableList(fields);
+        this.fieldsByName = new HashMap<>();
+        for (EntityField field : fields) {
+            fieldsByName.put(field.getName(), field);
+        }
+    }
+
+    /**
+     * Reading the structure of a class annotated with @Entity annotation.
+     * @param cls entity class.
+     * @return metadata for the class.
+     */
+    public static EntityMetadata of(Class<?> cls) {
+        EntityField idField = null;
+        EntityField versionField = null;
+        List<EntityField> fields = new ArrayList<>();
+
+        for (Field field : cls.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            if (field.isAnnotationPresent(Id.class)) {
+                if (field.getType() != Long.class){
+                    throw new FrameworkException("Field: " + field.getName() + " of class: " + cls.getName() + " must be of type Long");
+                }
+                idField = new EntityField(field);
+            }
+            else {
+                EntityField entityField = new EntityField(field);
+                if (field.isAnnotationPresent(Version.class)) {
+                    Class<?> type = field.getType();
+                    if (versionField != null || (type != Long.class && type != long.class && type != Integer.class && type != int.class)) {
+                        throw new FrameworkException("Field: " + field.getName() + " of class: " + cls.getName() + " must be the only @Version field, of type Long or Integer");
+                    }
+                    versionField = entityField;
+                }
+                fields.add(entityField);
+            }
+        }
+        if (idField == null){
+            throw new FrameworkException("Class: " + cls.getName() + " does not have @Id annotation");
+        }
+
+        MethodHandle constructor;
+        try {
+            Constructor<?> noArgs = cls.getDeclaredConstructor();
+            noArgs.setAccessible(true);
+            constructor = MethodHandles.lookup().unreflectConstructor(noArgs).asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new FrameworkException("Class: " + cls.getName() + " must have a no-arguments constructor");
+        }
+
+        return new EntityMetadata(cls, constructor, idField, versionField, fields);
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public EntityField getIdField() {
+        return idField;
+    }
+
+    /**
+     * @return @Version field, also one of getFields, or null if the entity has none.
+     */
+    public EntityField getVersionField() {
+        return versionField;
+    }
+
+    public List<EntityField> getFields() {
+        return fields;
+    }
+
+    public EntityField getField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * Creating an empty entity object.
+     * @return new instance of the entity class.
+     */
+    public Object newInstance() {
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new FrameworkException("Failed to create entity: " + entityClass.getName() + " " + e.getMessage());
+        }
+    }
+
+    public Long getId(Object entity) {
+        return (Long) idField.get(entity);
+    }
+
+    public void setId(Object entity, Long id) {
+        idField.set(entity, id);
+    }
+
+    /**
+     * @param entity object of the entity class.
+     * @return value of the @Version field, null if it is null or the entity has none, 0 is a version like any other.
+     */
+    public Long getVersion(Object entity) {
+        if (versionField == null) {
+            return null;
+        }
+        Number version = (Number) versionField.get(entity);
+        return version == null ? null : version.longValue();
+    }
+
+    /**
+     * @param entity object of the entity class, nothing happens if it has no @Version field.
+     * @param version new value of the field.
+     */
+    public void setVersion(Object entity, long version) {
+        if (versionField == null) {
+            return;
+        }
+        Class<?> type = versionField.getType();
+        versionField.set(entity, type == Long.class || type == long.class ? (Object) version : (Object) Math.toIntExact(version));
+    }
+}
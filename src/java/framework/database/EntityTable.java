@@ -0,0 +1,708 @@
+package framework.database;
+
+import framework.exceptions.ConflictException;
+import framework.exceptions.FrameworkException;
+import framework.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * One database table for a class annotated with @Entity annotation.
+ * Rows are kept in a hash index by primary key, so get, update
+ * and delete by id do not scan the table.
+ * Ids are handed out in increasing order, so a second map sorted
+ * by id keeps the rows in insertion order for pages and iteration.
+ * Writes to a table are serialized by the table's own lock,
+ * reads by id never lock. getAll returns an immutable TableSnapshot
+ * from CopyOnWriteRows, iterate walks the rows page by page without
+ * holding the lock, and sees writes made while it runs.
+ * In durable mode every change is queued to the write-ahead log
+ * under the same lock before it is applied, and the caller waits for it after unlocking.
+ * A log that already failed refuses the record, so the change is never applied, a write that
+ * fails after unlocking fences the table.
+ * After a restart, rows may still be in a mapped ColumnarSnapshot,
+ * such a row is built and moved to the maps the first time it is used.
+ * Every @Indexed field has a FieldIndex, changed under the write lock together with the row.
+ * Updates replace a row in place and, for entities with a @Version field,
+ * are a compare-and-set on the version under the same lock.
+ */
+public class EntityTable {
+    private static final int ITERATION_BATCH = 256;        //rows read under the lock at once by iterate
+
+    private final EntityMetadata metadata;
+
+    private final Map<Long, Object> index;                      //id -> entity
+    private final ConcurrentSkipListMap<Long, Object> rows;     //id -> entity, in insertion order
+    private final CopyOnWriteRows readView;                     //same rows, for snapshots, filled once nothing is left in the mapped snapshot
+    private final AtomicLong idCounter;
+    private final ReadWriteLock lock;
+    private volatile WriteAheadLog writeAheadLog;              //null when the database is in memory only
+    private volatile ColumnarSnapshot snapshot;                //rows not yet loaded from disk, null when all are in memory
+    private final Map<String, FieldIndex> indexes;             //field name -> index of the field
+    private volatile boolean fenced;                           //a change was applied but could not be logged
+
+    public EntityTable(EntityMetadata metadata) {
+        this.metadata = metadata;
+        this.index = new ConcurrentHashMap<>();
+        this.rows = new ConcurrentSkipListMap<>();
+        this.readView = new CopyOnWriteRows();
+        this.idCounter = new AtomicLong(1L);
+        this.lock = new ReentrantReadWriteLock();
+        this.indexes = new HashMap<>();
+        for (EntityField field : metadata.getFields()) {
+            if (field.getIndexed() != null) {
+                indexes.put(field.getName(), new FieldIndex(field));
+            }
+        }
+    }
+
+    public Class<?> getEntityClass() {
+        return metadata.getEntityClass();
+    }
+
+    public EntityMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Turning on logging of changes, after the table was recovered.
+     * @param writeAheadLog log to append changes to.
+     */
+    public void setWriteAheadLog(WriteAheadLog writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+    }
+
+    /**
+     * Making rows of a snapshot readable without loading them, called during recovery.
+     * @param snapshot mapped rows of this table.
+     */
+    public void attachSnapshot(ColumnarSnapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            this.snapshot = snapshot;
+            advanceNextId(snapshot.getNextId());
+            if (snapshot.getRowCount() > 0) {
+                advanceNextId(snapshot.idAt(snapshot.getRowCount() - 1) + 1);
+            }
+            for (FieldIndex fieldIndex : indexes.values()) {
+                for (int position = 0; position < snapshot.getRowCount(); position++) {
+                    fieldIndex.addValue(snapshot.valueAt(fieldIndex.getField(), position), snapshot.idAt(position));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * GET one row by primary key.
+     * @param id of entity in the table.
+     * @return entity with given id, or null if there is no such row.
+     */
+    public Object get(Long id) {
+        checkFenced();
+        Object entity = index.get(id);
+        if (entity != null || snapshot == null) {
+            return entity;
+        }
+        lock.readLock().lock();
+        try {
+            return load(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * GET all rows in insertion order, as an immutable point-in-time snapshot.
+     * Snapshot shares memory with the table, it is not a copy of it.
+     * @return all entities of the table, no write is half visible in it, and later writes are not visible at all.
+     */
+    public List<Object> getAll() {
+        checkFenced();
+        loadAll();
+        lock.readLock().lock();
+        try {
+            return readView.snapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Iterating over all rows in id order, reading them page by page.
+     * No lock is held between pages, so the iteration never blocks writers and never fails
+     * because of them, rows written meanwhile may or may not be seen (weakly consistent).
+     * @return iterator over the rows.
+     */
+    public Iterator<Object> iterate() {
+        return new Iterator<>() {
+            private List<Object> batch = getPage(0L, 0, ITERATION_BATCH);
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (position == batch.size() && batch.size() == ITERATION_BATCH) {
+                    batch = getPage(metadata.getId(batch.get(ITERATION_BATCH - 1)), 0, ITERATION_BATCH);
+                    position = 0;
+                }
+                return position < batch.size();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(position++);
+            }
+        };
+    }
+
+    /**
+     * GET one page of rows in id order, without copying the table.
+     * Rows still in a mapped snapshot are merged in by id and built only if they are on the page.
+     * @param after rows with id greater than this, 0 from the start.
+     * @param offset rows to skip after that.
+     * @param limit most rows to return.
+     * @return new list with at most limit entities.
+     */
+    public List<Object> getPage(long after, int offset, int limit) {
+        checkFenced();
+        List<Object> page = new ArrayList<>(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            Iterator<Map.Entry<Long, Object>> loaded = rows.tailMap(after, false).entrySet().iterator();
+            Map.Entry<Long, Object> next = loaded.hasNext() ? loaded.next() : null;
+            ColumnarSnapshot cold = snapshot;
+            int position = cold == null ? 0 : cold.firstAfter(after);
+            long lastId = after;
+
+            while (page.size() < limit) {
+                while (cold != null && position < cold.getRowCount() && cold.isClaimed(position)) {
+                    position++;
+                }
+                boolean fromSnapshot = cold != null && position < cold.getRowCount()
+                        && (next == null || cold.idAt(position) < next.getKey());
+                if (!fromSnapshot && next == null) {
+                    break;
+                }
+
+                /// id not above the last one was built by another reader meanwhile, and already returned from the other side
+                long id = fromSnapshot ? cold.idAt(position) : next.getKey();
+                if (id > lastId && offset > 0) {
+                    offset--;
+                }
+                else if (id > lastId) {
+                    Object entity = fromSnapshot ? load(id) : next.getValue();
+                    if (entity != null) {
+                        page.add(entity);
+                    }
+                }
+                lastId = Math.max(lastId, id);
+
+                if (fromSnapshot) {
+                    position++;
+                }
+                else {
+                    next = loaded.hasNext() ? loaded.next() : null;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    /**
+     * Finding rows by an @Indexed field.
+     * @param fieldName name of the field.
+     * @param value wanted value.
+     * @return entities with the value, in id order.
+     */
+    public List<Object> findEqual(String fieldName, Object value) {
+        checkFenced();
+        lock.readLock().lock();
+        try {
+            return loadAll(index(fieldName).equal(value));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finding rows by a range of an @Indexed(sorted = true) field.
+     * @param fieldName name of the field.
+     * @param from lowest value, inclusive.
+     * @param to highest value, inclusive.
+     * @return entities with the value in range, ordered by value and then by id.
+     */
+    public List<Object> findBetween(String fieldName, Object from, Object to) {
+        checkFenced();
+        lock.readLock().lock();
+        try {
+            return loadAll(index(fieldName).between(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Assigning primary key value for new rows of this table.
+     * @return next Long value for Id field, unique even under concurrent inserts.
+     */
+    public Long nextId() {
+        return idCounter.getAndIncrement();
+    }
+
+    /**
+     * Assigning primary keys for a whole batch at once.
+     * @param count number of ids.
+     * @return first id of the block, the block is first .. first + count - 1.
+     */
+    public long reserveIds(int count) {
+        return idCounter.getAndAdd(count);
+    }
+
+    /**
+     * @return id the next insert will get, without taking it.
+     */
+    public long peekNextId() {
+        return idCounter.get();
+    }
+
+    /**
+     * Making sure ids are never handed out twice after recovery.
+     * @param nextId lowest id the table may hand out next.
+     */
+    public void advanceNextId(long nextId) {
+        idCounter.accumulateAndGet(nextId, Math::max);
+    }
+
+    /**
+     * Inserting a new row, entity must already have its id assigned.
+     * @param entity object to be inserted.
+     */
+    public void insert(Object entity) {
+        Long id = metadata.getId(entity);
+        if (id == null) {
+            throw new FrameworkException("Entity: " + getEntityClass().getName() + " has no id assigned");
+        }
+        metadata.setVersion(entity, 1);
+        CompletableFuture<Void> durable = null;
+        lock.writeLock().lock();
+        try {
+            checkFenced();
+            if (load(id) != null) {
+                throw new FrameworkException("Entity: " + getEntityClass().getName() + " with id: " + id + " already exists");
+            }
+            durable = log(WriteAheadLog.INSERT, id, entity);
+            index.put(id, entity);
+            putRow(id, entity);
+            addToIndexes(entity, id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(durable);
+    }
+
+    /**
+     * Inserting new rows under one lock and with one log write, nothing is inserted if one of them fails.
+     * @param entities objects to be inserted, with ids already assigned.
+     */
+    public void insertAll(List<Object> entities) {
+        List<Long> ids = new ArrayList<>(entities.size());
+        for (Object entity : entities) {
+            Long id = metadata.getId(entity);
+            if (id == null) {
+                throw new FrameworkException("Entity: " + getEntityClass().getName() + " has no id assigned");
+            }
+            metadata.setVersion(entity, 1);
+            ids.add(id);
+        }
+
+        CompletableFuture<Void> durable = null;
+        lock.writeLock().lock();
+        try {
+            checkFenced();
+            Set<Long> batch = new HashSet<>(ids);
+            if (batch.size() != ids.size()) {
+                throw new FrameworkException("Batch for entity: " + getEntityClass().getName() + " has the same id twice");
+            }
+            for (Long id : ids) {
+                if (load(id) != null) {
+                    throw new FrameworkException("Entity: " + getEntityClass().getName() + " with id: " + id + " already exists");
+                }
+            }
+            durable = logAll(WriteAheadLog.INSERT, ids, entities);
+            for (int i = 0; i < ids.size(); i++) {
+                index.put(ids.get(i), entities.get(i));
+                putRow(ids.get(i), entities.get(i));
+                addToIndexes(entities.get(i), ids.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(durable);
+    }
+
+    /**
+     * Replacing many rows under one lock and with one log write, ids with no row are skipped.
+     * Versions of all rows are checked first, so nothing is replaced if one of them conflicts.
+     * @param entities id -> new object for the row.
+     * @return number of rows replaced.
+     * @throws ConflictException if a @Version does not match the stored row.
+     */
+    public int updateAll(Map<Long, Object> entities) {
+        List<Long> ids = new ArrayList<>(entities.size());
+        List<Object> updated = new ArrayList<>(entities.size());
+        CompletableFuture<Void> durable = null;
+        lock.writeLock().lock();
+        try {
+            checkFenced();
+            List<Object> olds = new ArrayList<>(entities.size());
+            List<Long> versions = new ArrayList<>(entities.size());
+            for (Map.Entry<Long, Object> entry : entities.entrySet()) {
+                Object old = load(entry.getKey());
+                if (old == null) {
+                    continue;
+                }
+                versions.add(nextVersion(entry.getKey(), old, entry.getValue()));
+                ids.add(entry.getKey());
+                updated.add(entry.getValue());
+                olds.add(old);
+            }
+
+            for (int i = 0; i < ids.size(); i++) {
+                metadata.setId(updated.get(i), ids.get(i));
+                metadata.setVersion(updated.get(i), versions.get(i));
+            }
+            durable = logAll(WriteAheadLog.UPDATE, ids, updated);
+            for (int i = 0; i < ids.size(); i++) {
+                Long id = ids.get(i);
+                Object entity = updated.get(i);
+                index.put(id, entity);
+                putRow(id, entity);
+                removeFromIndexes(olds.get(i), id);
+                addToIndexes(entity, id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(durable);
+        return ids.size();
+    }
+
+    /**
+     * Deleting many rows under one lock and with one log write, ids with no row are skipped.
+     * @param ids of entities in the table.
+     * @return number of rows deleted.
+     */
+    public int deleteAll(Collection<Long> ids) {
+        List<Long> deleted = new ArrayList<>(ids.size());
+        CompletableFuture<Void> durable = null;
+        lock.writeLock().lock();
+        try {
+            checkFenced();
+            for (Long id : new LinkedHashSet<>(ids)) {
+                if (load(id) != null) {
+                    deleted.add(id);
+                }
+            }
+            durable = logAll(WriteAheadLog.DELETE, deleted, null);
+            for (Long id : deleted) {
+                Object removed = index.remove(id);
+                removeRow(id);
+                removeFromIndexes(removed, id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(durable);
+        return deleted.size();
+    }
+
+    /**
+     * Replacing the row with given id, row keeps its position in the table.
+     * @param id of entity in the table.
+     * @param entity new object for the row.
+     * @return true if the row existed and was replaced.
+     * @throws ConflictException if the @Version does not match the stored row.
+     */
+    public boolean update(Long id, Object entity) {
+        metadata.setId(entity, id);
+        CompletableFuture<Void> durable = null;
+        lock.writeLock().lock();
+        try {
+            checkFenced();
+            Object old = load(id);
+            if (old == null) {
+                return false;
+            }
+            metadata.setVersion(entity, nextVersion(id, old, entity));
+            durable = log(WriteAheadLog.UPDATE, id, entity);
+            index.put(id, entity);
+            putRow(id, entity);
+            removeFromIndexes(old, id);
+            addToIndexes(entity, id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(durable);
+        return true;
+    }
+
+    /**
+     * Compare-and-set check of @Version, called under the write lock.
+     * @param id of the row.
+     * @param old stored row.
+     * @param entity new object, its version is the one the caller read.
+     * @return version the new object gets.
+     * @throws ConflictException if the new object has no version or not the stored one.
+     */
+    private long nextVersion(Long id, Object old, Object entity) {
+        if (metadata.getVersionField() == null) {
+            return 0;
+        }
+        Long expected = metadata.getVersion(entity);
+        Long current = metadata.getVersion(old);
+        if (expected == null) {
+            throw new ConflictException("Entity: " + getEntityClass().getName() + " with id: " + id + " is at version: " + current + ", update has no version, read the row and send its version");
+        }
+        if (!expected.equals(current)) {
+            throw new ConflictException("Entity: " + getEntityClass().getName() + " with id: " + id + " is at version: " + current + ", update was made for version: " + expected);
+        }
+        return current == null ? 1 : current + 1;
+    }
+
+    /**
+     * DELETE row by primary key.
+     * @param id of entity in the table.
+     * @return removed entity, or null if there is no such row.
+     */
+    public Object delete(Long id) {
+        Object removed;
+        CompletableFuture<Void> durable = null;
+        lock.writeLock().lock();
+        try {
+            checkFenced();
+            removed = load(id);
+            if (removed != null) {
+                durable = log(WriteAheadLog.DELETE, id, null);
+                index.remove(id);
+                removeRow(id);
+                removeFromIndexes(removed, id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(durable);
+        return removed;
+    }
+
+    /**
+     * Putting a row back during recovery, replaces a row with the same id and is not logged.
+     * @param entity row read from a snapshot or the log.
+     */
+    public void restore(Object entity) {
+        Long id = metadata.getId(entity);
+        lock.writeLock().lock();
+        try {
+            Object old = load(id);
+            if (old != null) {
+                removeFromIndexes(old, id);
+            }
+            index.put(id, entity);
+            putRow(id, entity);
+            addToIndexes(entity, id);
+            advanceNextId(id + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removing a row during recovery, not logged.
+     * @param id of the row.
+     */
+    public void restoreDelete(Long id) {
+        lock.writeLock().lock();
+        try {
+            load(id);
+            Object removed = index.remove(id);
+            if (removed != null) {
+                removeRow(id);
+                removeFromIndexes(removed, id);
+            }
+            advanceNextId(id + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        ColumnarSnapshot cold = snapshot;
+        return index.size() + (cold == null ? 0 : cold.getUnclaimedCount());
+    }
+
+    /**
+     * Finding a row, building it from the snapshot if it is not in memory yet.
+     * Caller holds the read or the write lock, so a row can not be deleted while it is built.
+     * @param id of the row.
+     * @return entity, or null if there is no such row.
+     */
+    private Object load(Long id) {
+        Object entity = index.get(id);
+        ColumnarSnapshot cold = snapshot;
+        if (entity != null || cold == null) {
+            return entity;
+        }
+
+        int position = cold.find(id);
+        if (position < 0 || cold.isClaimed(position)) {
+            return null;
+        }
+        Object loaded = cold.materialize(position);
+        Object existing = index.putIfAbsent(id, loaded);
+        if (existing != null) {
+            return existing;        //built by another reader meanwhile
+        }
+        rows.put(id, loaded);
+        cold.claim(position);
+        return loaded;
+    }
+
+    /**
+     * Building all rows still in the snapshot, after that the snapshot is no longer used.
+     */
+    private void loadAll() {
+        if (snapshot == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            ColumnarSnapshot cold = snapshot;
+            if (cold == null) {
+                return;
+            }
+            for (int position = 0; position < cold.getRowCount(); position++) {
+                if (cold.claim(position)) {
+                    Object entity = cold.materialize(position);
+                    Long id = metadata.getId(entity);
+                    index.put(id, entity);
+                    rows.put(id, entity);
+                }
+            }
+            snapshot = null;
+            readView.clear();
+            for (Map.Entry<Long, Object> row : rows.entrySet()) {
+                readView.put(row.getKey(), row.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Building the rows of ids found in an index, caller holds the read lock.
+     */
+    private List<Object> loadAll(List<Long> ids) {
+        List<Object> entities = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Object entity = load(id);
+            if (entity != null) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    private FieldIndex index(String fieldName) {
+        FieldIndex fieldIndex = indexes.get(fieldName);
+        if (fieldIndex == null) {
+            throw new FrameworkException("Field: " + fieldName + " of entity: " + getEntityClass().getName() + " is not @Indexed");
+        }
+        return fieldIndex;
+    }
+
+    private void addToIndexes(Object entity, Long id) {
+        for (FieldIndex fieldIndex : indexes.values()) {
+            fieldIndex.add(entity, id);
+        }
+    }
+
+    private void removeFromIndexes(Object entity, Long id) {
+        for (FieldIndex fieldIndex : indexes.values()) {
+            fieldIndex.remove(entity, id);
+        }
+    }
+
+    /**
+     * Writing a row to both row maps, caller holds the write lock.
+     * While rows are still in the mapped snapshot, the read view is filled later by loadAll.
+     */
+    private void putRow(Long id, Object entity) {
+        rows.put(id, entity);
+        if (snapshot == null) {
+            readView.put(id, entity);
+        }
+    }
+
+    private void removeRow(Long id) {
+        rows.remove(id);
+        if (snapshot == null) {
+            readView.remove(id);
+        }
+    }
+
+    private CompletableFuture<Void> log(byte operation, Long id, Object entity) {
+        WriteAheadLog log = writeAheadLog;
+        return log == null ? null : log.append(operation, metadata, id, entity);
+    }
+
+    private CompletableFuture<Void> logAll(byte operation, List<Long> ids, List<Object> entities) {
+        WriteAheadLog log = writeAheadLog;
+        return log == null || ids.isEmpty() ? null : log.appendAll(operation, metadata, ids, entities);
+    }
+
+    /**
+     * Waiting for the log write of a change, which is already applied and visible.
+     * If the write failed the table is fenced: memory now holds a change the log does not,
+     * and undoing it could undo later changes made on top of it, so the table refuses every read
+     * and write until a restart recovers it from the log.
+     */
+    private void awaitDurable(CompletableFuture<Void> durable) {
+        if (durable == null || !WriteAheadLog.SYNC_COMMIT) {
+            return;
+        }
+        try {
+            durable.join();
+        } catch (CompletionException e) {
+            fenced = true;
+            Log.error("EntityTable", "Table: {} is fenced, a change could not be logged: {}", metadata.getTableName(), e.getCause().getMessage());
+            throw new FrameworkException("Change of table: " + metadata.getTableName() + " could not be logged, the table is fenced until a restart. " + e.getCause().getMessage());
+        }
+    }
+
+    private void checkFenced() {
+        if (fenced) {
+            throw new FrameworkException("Table: " + metadata.getTableName() + " is fenced after a failed log write, restart to recover it from the log");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package framework.database;
+
+import framework.exceptions.FrameworkException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Secondary index of one @Indexed field, value -> ids of rows with that value.
+ * Hash index answers equality, sorted index also answers ranges.
+ * Index is changed only under the table's write lock and read under its read lock,
+ * so plain collections are enough. Rows where the field is null are not indexed.
+ */
+public class FieldIndex {
+    private final EntityField field;
+    private final boolean sorted;
+    private final Map<Object, Set<Long>> entries;       //field value -> ids, in id order
+
+    public FieldIndex(EntityField field) {
+        this.field = field;
+        this.sorted = field.getIndexed().sorted();
+        if (sorted && !field.getType().isPrimitive() && !Comparable.class.isAssignableFrom(field.getType())) {
+            throw new FrameworkException("Field: " + field.getName() + " has a sorted index, but its type: " + field.getType().getName() + " is not Comparable");
+        }
+        this.entries = sorted ? new TreeMap<>() : new HashMap<>();
+    }
+
+    public EntityField getField() {
+        return field;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * @param entity row to index, its id is already assigned.
+     * @param id of the row.
+     */
+    public void add(Object entity, Long id) {
+        addValue(field.get(entity), id);
+    }
+
+    /**
+     * @param value of the field, null is not indexed.
+     * @param id of the row.
+     */
+    public void addValue(Object value, long id) {
+        if (value != null) {
+            entries.computeIfAbsent(value, key -> new TreeSet<>()).add(id);
+        }
+    }
+
+    /**
+     * @param entity row as it was indexed.
+     * @param id of the row.
+     */
+    public void remove(Object entity, Long id) {
+        Object value = field.get(entity);
+        if (value == null) {
+            return;
+        }
+        Set<Long> ids = entries.get(value);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            entries.remove(value);
+        }
+    }
+
+    /**
+     * @param value wanted value of the field.
+     * @return ids of rows with the value, in id order.
+     */
+    public List<Long> equal(Object value) {
+        Set<Long> ids = value == null ? null : entries.get(value);
+        return ids == null ? Collections.emptyList() : new ArrayList<>(ids);
+    }
+
+    /**
+     * @param from lowest value, inclusive.
+     * @param to highest value, inclusive.
+     * @return ids of rows with the value in range, ordered by value and then by id.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> between(Object from, Object to) {
+        if (!sorted) {
+            throw new FrameworkException("Field: " + field.getName() + " needs @Indexed(sorted = true) for range queries");
+        }
+        List<Long> ids = new ArrayList<>();
+        if (from == null || to == null || ((Comparable<Object>) from).compareTo(to) > 0) {
+            return ids;
+        }
+        for (Set<Long> values : ((NavigableMap<Object, Set<Long>>) entries).subMap(from, true, to, true).values()) {
+            ids.addAll(values);
+        }
+        return ids;
+    }
+}
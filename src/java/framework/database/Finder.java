@@ -0,0 +1,125 @@
+package framework.database;
+
+import framework.exceptions.FrameworkException;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Derived repository method, compiled from its name when repositories are registered.
+ * findByName(String) looks the value up in the field's index,
+ * findByAgeBetween(int, int) reads a range of a sorted index, both bounds inclusive.
+ * Method returns a List of entities, or a single entity (first match or null).
+ */
+public class Finder {
+    private static final String PREFIX = "findBy";
+    private static final String BETWEEN = "Between";
+
+    private final String fieldName;
+    private final boolean range;
+    private final boolean returnsList;
+
+    private Finder(String fieldName, boolean range, boolean returnsList) {
+        this.fieldName = fieldName;
+        this.range = range;
+        this.returnsList = returnsList;
+    }
+
+    /**
+     * @param method any repository method.
+     * @return true if the method should be compiled into a Finder.
+     */
+    public static boolean isFinder(Method method) {
+        return method.getName().startsWith(PREFIX) && method.getName().length() > PREFIX.length();
+    }
+
+    /**
+     * Checking a derived method against the entity, so a wrong method fails at startup.
+     * @param method repository method named findBy...
+     * @param metadata of the repository's entity.
+     * @return compiled finder.
+     */
+    public static Finder of(Method method, EntityMetadata metadata) {
+        String where = " Method: " + method.getName() + " in: " + method.getDeclaringClass().getName();
+        String name = method.getName().substring(PREFIX.length());
+        boolean range = name.endsWith(BETWEEN) && name.length() > BETWEEN.length();
+        if (range) {
+            name = name.substring(0, name.length() - BETWEEN.length());
+        }
+        String fieldName = Character.toLowerCase(name.charAt(0)) + name.substring(1);
+
+        EntityField field = metadata.getField(fieldName);
+        if (field == null) {
+            throw new FrameworkException("Entity: " + metadata.getEntityClass().getName() + " has no field: " + fieldName + "." + where);
+        }
+        if (field.getIndexed() == null) {
+            throw new FrameworkException("Field: " + fieldName + " is not @Indexed." + where);
+        }
+        if (range && !field.getIndexed().sorted()) {
+            throw new FrameworkException("Field: " + fieldName + " needs @Indexed(sorted = true) for Between." + where);
+        }
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length != (range ? 2 : 1)) {
+            throw new FrameworkException("Derived method must have " + (range ? "two parameters" : "one parameter") + "." + where);
+        }
+        for (Class<?> parameterType : parameterTypes) {
+            if (box(parameterType) != box(field.getType())) {
+                throw new FrameworkException("Parameter of type: " + parameterType.getName() + " does not match field: " + fieldName + "." + where);
+            }
+        }
+
+        boolean returnsList = List.class.isAssignableFrom(method.getReturnType());
+        if (!returnsList && method.getReturnType() != metadata.getEntityClass()) {
+            throw new FrameworkException("Derived method must return a List or: " + metadata.getEntityClass().getName() + "." + where);
+        }
+        return new Finder(fieldName, range, returnsList);
+    }
+
+    /**
+     * Running the query against the table's index.
+     * @param table of the repository.
+     * @param first argument of the repository call.
+     * @param second argument of a Between method, ignored otherwise.
+     * @return List of entities, or one entity or null.
+     */
+    public Object find(EntityTable table, Object first, Object second) {
+        List<Object> entities = range ? table.findBetween(fieldName, first, second) : table.findEqual(fieldName, first);
+        if (returnsList) {
+            return entities;
+        }
+        return entities.isEmpty() ? null : entities.get(0);
+    }
+
+    /**
+     * @param type any type.
+     * @return wrapper class of a primitive type, the type itself otherwise.
+     */
+    public static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        }
+        if (type == long.class) {
+            return Long.class;
+        }
+        if (type == double.class) {
+            return Double.class;
+        }
+        if (type == float.class) {
+            return Float.class;
+        }
+        if (type == boolean.class) {
+            return Boolean.class;
+        }
+        if (type == short.class) {
+            return Short.class;
+        }
+        if (type == byte.class) {
+            return Byte.class;
+        }
+        return Character.class;
+    }
+}
@@ -0,0 +1,100 @@
+package framework.database;
+
+import framework.exceptions.BadRequestException;
+import framework.http.Request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a table, bound from ?limit=&after=&offset=&fields= query parameters.
+ * after is a keyset cursor, the last id of the previous page, so every page
+ * costs the same no matter how deep it is, offset has to skip rows one by one.
+ * fields selects which fields are returned, id is always returned.
+ */
+public class PageRequest {
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private final long after;
+    private final int offset;
+    private final int limit;
+    private final List<String> fields;         //empty for all fields
+
+    public PageRequest(long after, int offset, int limit, List<String> fields) {
+        if (after < 0 || offset < 0 || limit < 1) {
+            throw new BadRequestException("Page needs after >= 0, offset >= 0 and limit >= 1");
+        }
+        this.after = after;
+        this.offset = offset;
+        this.limit = Math.min(limit, MAX_LIMIT);
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * Reading the page from query parameters of a request, missing parameters get defaults.
+     * @param request Request object received from the client.
+     * @return page the client asked for.
+     */
+    public static PageRequest from(Request request) {
+        long after = parse(request, "after", 0L, Long.MAX_VALUE);
+        int offset = (int) parse(request, "offset", 0L, Integer.MAX_VALUE);
+        int limit = (int) parse(request, "limit", DEFAULT_LIMIT, Integer.MAX_VALUE);
+
+        List<String> fields = new ArrayList<>();
+        String selected = request.getParameter("fields");
+        if (selected != null) {
+            int start = 0;
+            while (start <= selected.length()) {
+                int comma = selected.indexOf(',', start);
+                int end = comma < 0 ? selected.length() : comma;
+                String field = selected.substring(start, end).trim();
+                if (!field.isEmpty()) {
+                    fields.add(field);
+                }
+                start = end + 1;
+            }
+        }
+        return new PageRequest(after, offset, limit, fields);
+    }
+
+    public long getAfter() {
+        return after;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param max largest value allowed, so the caller can narrow the result without it wrapping around.
+     * @return value of the parameter, or defaultValue if it is missing.
+     * @throws BadRequestException if the value is not a number or is larger than max.
+     */
+    private static long parse(Request request, String name, long defaultValue, long max) {
+        String value = request.getParameter(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        long number;
+        try {
+            number = Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            throw new BadRequestException("Parameter: " + name + " is not a number: " + value);
+        }
+        if (number > max) {
+            throw new BadRequestException("Parameter: " + name + " is larger than " + max + ": " + value);
+        }
+        return number;
+    }
+}
@@ -0,0 +1,348 @@
+package framework.database;
+
+import framework.exceptions.FrameworkException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the implementation of a @Repository interface at startup.
+ * Generated class is a final hidden class extending TableRepository, in the package of the interface,
+ * FrameworkRepository methods are inherited, every derived findBy method
+ * gets a body that boxes its arguments and calls TableRepository.find with the method's index,
+ * and a method redeclaring a FrameworkRepository method with a narrower return type
+ * gets a bridge to the inherited one. Bodies have no branches, so no stack map frames are needed.
+ */
+public class RepositoryGenerator {
+    private static final int CLASS_VERSION = 61;                 //Java 17
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final String SUPER_CLASS = TableRepository.class.getName().replace('.', '/');
+    private static final String CONSTRUCTOR_DESCRIPTOR = "(L" + EntityTable.class.getName().replace('.', '/') + ";[L" + Finder.class.getName().replace('.', '/') + ";)V";
+    private static final String FIND_DESCRIPTOR = "(ILjava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private RepositoryGenerator() {
+    }
+
+    /**
+     * Generating and instantiating the implementation of a repository interface.
+     * @param repository public interface annotated with @Repository.
+     * @param table of the repository's entity.
+     * @return repository object bound to the table.
+     */
+    public static Object generate(Class<?> repository, EntityTable table) {
+        if (!repository.isInterface() || !Modifier.isPublic(repository.getModifiers())) {
+            throw new FrameworkException("Repository: " + repository.getName() + " must be a public interface");
+        }
+
+        ClassWriter writer = new ClassWriter();
+        List<Finder> finders = new ArrayList<>();
+        Set<String> generated = new HashSet<>();
+        writer.constructor();
+
+        for (Method method : repository.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers()) || !generated.add(method.getName() + MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString())) {
+                continue;
+            }
+
+            Method inherited = inheritedMethod(method);
+            if (inherited != null) {
+                if (inherited.getReturnType() != method.getReturnType()) {
+                    writer.bridge(method, inherited);
+                }
+            }
+            else if (Finder.isFinder(method)) {
+                finders.add(Finder.of(method, table.getMetadata()));
+                writer.finder(method, finders.size() - 1);
+            }
+            else {
+                throw new FrameworkException("Method: " + method.getName() + " in: " + repository.getName() + " is not a FrameworkRepository method nor a derived findBy method");
+            }
+        }
+
+        try {
+            Class<?> generatedClass = define(repository, writer.toBytes(repository));
+            return MethodHandles.lookup().findConstructor(generatedClass, MethodType.methodType(void.class, EntityTable.class, Finder[].class))
+                    .invoke(table, finders.toArray(new Finder[0]));
+        } catch (Throwable e) {
+            throw new FrameworkException("Failed to generate repository: " + repository.getName() + " " + e);
+        }
+    }
+
+    /**
+     * Defining the generated class in the package and class loader of the repository interface,
+     * so it sees the same classes the interface does.
+     * It is a hidden class of a lookup in that package when the framework has full privilege access to it,
+     * that is when the repository is in the framework's module. A repository of a root with its own class loader
+     * is in another module, there the class is defined by a loader delegating to the repository's one.
+     * @param repository public interface annotated with @Repository.
+     * @param bytes of the generated class, named in the package of the interface.
+     * @return generated class.
+     */
+    private static Class<?> define(Class<?> repository, byte[] bytes) throws IllegalAccessException {
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(repository, MethodHandles.lookup());
+        if (lookup.hasFullPrivilegeAccess()) {
+            return lookup.defineHiddenClass(bytes, true).lookupClass();
+        }
+        return new RepositoryLoader(repository.getClassLoader()).define(bytes);
+    }
+
+    /**
+     * @return public TableRepository method with the same name and parameters, null if there is none.
+     */
+    private static Method inheritedMethod(Method method) {
+        try {
+            Method inherited = TableRepository.class.getMethod(method.getName(), method.getParameterTypes());
+            if (!method.getReturnType().isAssignableFrom(inherited.getReturnType()) && !inherited.getReturnType().isAssignableFrom(method.getReturnType())) {
+                throw new FrameworkException("Method: " + method.getName() + " in: " + method.getDeclaringClass().getName() + " has a return type FrameworkRepository can not give");
+            }
+            return inherited;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loader of one generated repository, everything else it loads through the repository's class loader.
+     */
+    private static class RepositoryLoader extends ClassLoader {
+
+        private RepositoryLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Just enough of the class file format for the generated repositories.
+     */
+    private static class ClassWriter {
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> poolIndexes = new HashMap<>();     //kind and value -> index in the constant pool
+        private int poolCount = 1;
+
+        private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        private final DataOutputStream methods = new DataOutputStream(methodBytes);
+        private int methodCount;
+
+        private void constructor() {
+            Code code = new Code();
+            code.op(0x2a);                                                  //aload_0
+            code.op(0x2b);                                                  //aload_1
+            code.op(0x2c);                                                  //aload_2
+            code.op(0xb7).u2(methodRef(SUPER_CLASS, "<init>", CONSTRUCTOR_DESCRIPTOR));     //invokespecial
+            code.op(0xb1);                                                  //return
+            method(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESCRIPTOR, code, 3, 3);
+        }
+
+        /// return (ReturnType) find(index, box(arg0), box(arg1) or null)
+        private void finder(Method method, int index) {
+            Code code = new Code();
+            code.op(0x2a);
+            if (index <= 5) {
+                code.op(0x03 + index);                                      //iconst_<index>
+            }
+            else {
+                code.op(0x11).u2(index);                                    //sipush
+            }
+            int slot = 1;
+            Class<?>[] parameters = method.getParameterTypes();
+            for (Class<?> parameter : parameters) {
+                slot = load(code, parameter, slot);
+                box(code, parameter);
+            }
+            if (parameters.length == 1) {
+                code.op(0x01);                                              //aconst_null
+            }
+            code.op(0xb6).u2(methodRef(SUPER_CLASS, "find", FIND_DESCRIPTOR));     //invokevirtual
+            returnAs(code, method.getReturnType());
+            method(ACC_PUBLIC, method.getName(), descriptor(method), code, 6, slot);
+        }
+
+        /// return (NarrowerType) super.method(args)
+        private void bridge(Method method, Method inherited) {
+            Code code = new Code();
+            code.op(0x2a);
+            int slot = 1;
+            for (Class<?> parameter : method.getParameterTypes()) {
+                slot = load(code, parameter, slot);
+            }
+            code.op(0xb6).u2(methodRef(SUPER_CLASS, inherited.getName(), descriptor(inherited)));
+            returnAs(code, method.getReturnType());
+            method(ACC_PUBLIC, method.getName(), descriptor(method), code, slot + 1, slot);
+        }
+
+        private int load(Code code, Class<?> type, int slot) {
+            int opcode = type == long.class ? 0x16 : type == float.class ? 0x17 : type == double.class ? 0x18 : type.isPrimitive() ? 0x15 : 0x19;
+            code.op(opcode).u1(slot);
+            return slot + (type == long.class || type == double.class ? 2 : 1);
+        }
+
+        private void box(Code code, Class<?> type) {
+            if (type.isPrimitive()) {
+                Class<?> wrapper = Finder.box(type);
+                code.op(0xb8).u2(methodRef(internalName(wrapper), "valueOf", "(" + type.descriptorString() + ")" + wrapper.descriptorString()));   //invokestatic
+            }
+        }
+
+        private void returnAs(Code code, Class<?> type) {
+            if (type == void.class) {
+                code.op(0xb1);
+                return;
+            }
+            if (type.isPrimitive()) {
+                throw new FrameworkException("Repository method can not return: " + type.getName());
+            }
+            if (type != Object.class) {
+                code.op(0xc0).u2(classRef(internalName(type)));            //checkcast
+            }
+            code.op(0xb0);                                                  //areturn
+        }
+
+        private void method(int access, String name, String descriptor, Code code, int maxStack, int maxLocals) {
+            try {
+                methods.writeShort(access);
+                methods.writeShort(utf8(name));
+                methods.writeShort(utf8(descriptor));
+                methods.writeShort(1);
+                methods.writeShort(utf8("Code"));
+                methods.writeInt(12 + code.bytes.size());
+                methods.writeShort(maxStack);
+                methods.writeShort(maxLocals);
+                methods.writeInt(code.bytes.size());
+                code.bytes.writeTo(methods);
+                methods.writeShort(0);                                      //exception table
+                methods.writeShort(0);                                      //attributes
+                methodCount++;
+            } catch (IOException e) {
+                throw new FrameworkException("Failed to write method: " + name);
+            }
+        }
+
+        private byte[] toBytes(Class<?> repository) {
+            int thisClass = classRef(internalName(repository) + "$Generated");
+            int superClass = classRef(SUPER_CLASS);
+            int repositoryInterface = classRef(internalName(repository));
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(CLASS_VERSION);
+                out.writeShort(poolCount);
+                poolBytes.writeTo(out);
+                out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(repositoryInterface);
+                out.writeShort(0);                                          //fields
+                out.writeShort(methodCount);
+                methodBytes.writeTo(out);
+                out.writeShort(0);                                          //attributes
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new FrameworkException("Failed to write repository: " + repository.getName());
+            }
+        }
+
+        private int utf8(String value) {
+            return constant("U" + value, () -> {
+                pool.writeByte(1);
+                pool.writeUTF(value);
+            });
+        }
+
+        private int classRef(String internalName) {
+            int name = utf8(internalName);
+            return constant("C" + internalName, () -> {
+                pool.writeByte(7);
+                pool.writeShort(name);
+            });
+        }
+
+        private int methodRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = constant("N" + name + descriptor, () -> {
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(descriptorIndex);
+            });
+            return constant("M" + owner + "." + name + descriptor, () -> {
+                pool.writeByte(10);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+            });
+        }
+
+        private int constant(String key, PoolEntry entry) {
+            Integer index = poolIndexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new FrameworkException("Failed to write constant: " + key);
+            }
+            poolIndexes.put(key, poolCount);
+            return poolCount++;
+        }
+
+        private static String descriptor(Method method) {
+            return MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+        }
+
+        private static String internalName(Class<?> type) {
+            return type.getName().replace('.', '/');
+        }
+    }
+
+    @FunctionalInterface
+    private interface PoolEntry {
+        void write() throws IOException;
+    }
+
+    /**
+     * Bytecode of one method body.
+     */
+    private static class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        private Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        private Code u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package framework.database;
+
+import framework.http.Json;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary form of one row, used by the write-ahead log and snapshots.
+ * Fields are written in metadata order, each behind a one byte tag,
+ * primitives, their boxes and String are written natively, anything else as JSON
+ * through Json.GSON, so registered TypeConverters apply.
+ */
+public class RowCodec {
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte JSON = 7;
+
+    private RowCodec() {
+    }
+
+    /**
+     * Writing all fields of an entity, id included.
+     * @param metadata of the entity class.
+     * @param entity row to write.
+     * @param out destination.
+     */
+    public static void write(EntityMetadata metadata, Object entity, DataOutput out) throws IOException {
+        out.writeLong(metadata.getId(entity));
+        out.writeShort(metadata.getFields().size());
+        for (EntityField field : metadata.getFields()) {
+            writeValue(field.get(entity), out);
+        }
+    }
+
+    /**
+     * Reading a row written by write.
+     * @param metadata of the entity class.
+     * @param in source.
+     * @return new entity object.
+     */
+    public static Object read(EntityMetadata metadata, DataInput in) throws IOException {
+        Object entity = metadata.newInstance();
+        metadata.setId(entity, in.readLong());
+
+        int count = in.readShort();
+        for (int i = 0; i < count; i++) {
+            EntityField field = metadata.getFields().get(i);
+            Object value = readValue(field.getType(), in);
+            if (value != null || !field.getType().isPrimitive()) {
+                field.set(entity, value);
+            }
+        }
+        return entity;
+    }
+
+    private static void writeValue(Object value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof String string) {
+            out.writeByte(STRING);
+            writeString(string, out);
+        }
+        else if (value instanceof Integer number) {
+            out.writeByte(INT);
+            out.writeInt(number);
+        }
+        else if (value instanceof Long number) {
+            out.writeByte(LONG);
+            out.writeLong(number);
+        }
+        else if (value instanceof Boolean bool) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(bool);
+        }
+        else if (value instanceof Double number) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(number);
+        }
+        else if (value instanceof Float number) {
+            out.writeByte(FLOAT);
+            out.writeFloat(number);
+        }
+        else {
+            out.writeByte(JSON);
+            writeString(Json.GSON.toJson(value), out);
+        }
+    }
+
+    private static Object readValue(Class<?> type, DataInput in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case STRING -> readString(in);
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case BOOLEAN -> in.readBoolean();
+            case DOUBLE -> in.readDouble();
+            case FLOAT -> in.readFloat();
+            case JSON -> Json.GSON.fromJson(readString(in), type);
+            default -> throw new IOException("Unknown field tag: " + tag);
+        };
+    }
+
+    /// writeUTF is limited to 64 KB, strings are written as length + UTF-8 bytes instead
+    private static void writeString(String value, DataOutput out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
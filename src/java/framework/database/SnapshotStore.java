@@ -0,0 +1,178 @@
+package framework.database;
+
+import framework.exceptions.FrameworkException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compact copy of all tables, written next to the write-ahead log.
+ * A snapshot is a directory snapshot-<segment> with one ColumnarSnapshot
+ * file per table, it holds every change logged before that segment,
+ * so recovery maps it and replays the log from there.
+ * Snapshot is written to a temporary directory, every table file is opened again
+ * and checked, and only then renamed, so a crash or a file that can not be read back
+ * leaves the previous snapshot (and the log after it) in place.
+ */
+public class SnapshotStore {
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TABLE_SUFFIX = ".col";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Writing all tables.
+     * @param tables table name -> table.
+     * @param segment first log segment not covered by this snapshot.
+     * @return number of rows written.
+     */
+    public long write(Map<String, EntityTable> tables, long segment) {
+        Path target = snapshotPath(segment);
+        Path temporary = directory.resolve(target.getFileName() + TEMPORARY_SUFFIX);
+        long rows = 0;
+
+        try {
+            deleteRecursively(temporary);
+            Files.createDirectories(temporary);
+            for (EntityTable table : tables.values()) {
+                EntityMetadata metadata = table.getMetadata();
+                long nextId = table.peekNextId();
+                List<Object> snapshot = table.getAll();
+
+                Path file = temporary.resolve(metadata.getTableName() + TABLE_SUFFIX);
+                ColumnarSnapshot.write(file, metadata, snapshot, nextId);
+                verify(file, metadata, snapshot.size(), nextId);
+                rows += snapshot.size();
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(temporary);
+            throw new FrameworkException("Failed to write snapshot: " + target + " " + e.getMessage());
+        } catch (FrameworkException e) {
+            deleteQuietly(temporary);
+            throw e;
+        }
+        deleteSnapshotsBefore(segment);
+        return rows;
+    }
+
+    /**
+     * Mapping the latest snapshot into empty tables, rows are built when they are first used.
+     * @param tables table name -> table.
+     * @return first log segment to replay, 0 if there is no snapshot.
+     */
+    public long load(Map<String, EntityTable> tables) {
+        long segment = latestSegment();
+        if (segment < 0) {
+            return 0;
+        }
+
+        Path path = snapshotPath(segment);
+        try (Stream<Path> files = Files.list(path)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(TABLE_SUFFIX)) {
+                    continue;
+                }
+                String tableName = name.substring(0, name.length() - TABLE_SUFFIX.length());
+                EntityTable table = tables.get(tableName);
+                if (table == null) {
+                    throw new FrameworkException("Snapshot has table: " + tableName + " which has no @Entity class");
+                }
+                table.attachSnapshot(ColumnarSnapshot.open(file, table.getMetadata()));
+            }
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to read snapshot: " + path + " " + e.getMessage());
+        }
+        return segment;
+    }
+
+    /**
+     * Opening a written table file the way recovery will, callers delete the log only after this passed.
+     */
+    private static void verify(Path file, EntityMetadata metadata, int rows, long nextId) {
+        ColumnarSnapshot written = ColumnarSnapshot.open(file, metadata);
+        if (written.getRowCount() != rows || written.getNextId() != nextId) {
+            throw new FrameworkException("Snapshot of table: " + metadata.getTableName() + " does not read back what was written");
+        }
+        if (rows > 0) {
+            written.materialize(rows - 1);          //reads every column of the last row, throws if one is cut short
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            deleteRecursively(path);
+        } catch (IOException ignored) {
+            /// next snapshot deletes the temporary directory before writing
+        }
+    }
+
+    private long latestSegment() {
+        long latest = -1;
+        for (long segment : listSnapshots()) {
+            latest = Math.max(latest, segment);
+        }
+        return latest;
+    }
+
+    private List<Long> listSnapshots() {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SNAPSHOT_PREFIX) && !name.endsWith(TEMPORARY_SUFFIX) && Files.isDirectory(path)) {
+                    segments.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length())));
+                }
+            }
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to list snapshots in: " + directory);
+        }
+        return segments;
+    }
+
+    /**
+     * Deleting older snapshots, a table still mapped from one of them stays readable until it is unmapped.
+     */
+    private void deleteSnapshotsBefore(long segment) {
+        try {
+            for (long older : listSnapshots()) {
+                if (older < segment) {
+                    deleteRecursively(snapshotPath(older));
+                }
+            }
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to delete old snapshots in: " + directory);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private Path snapshotPath(long segment) {
+        return directory.resolve(String.format("%s%012d", SNAPSHOT_PREFIX, segment));
+    }
+}
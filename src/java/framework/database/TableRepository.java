@@ -0,0 +1,156 @@
+package framework.database;
+
+import framework.engines.DatabaseEngine;
+import framework.exceptions.FrameworkException;
+import framework.interfaces.FrameworkRepository;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Superclass of every generated repository, bound to one table.
+ * RepositoryGenerator extends it with a class implementing the @Repository interface,
+ * which only adds the derived findBy methods, so a repository call
+ * is a plain method call on a final class.
+ */
+public abstract class TableRepository implements FrameworkRepository<Object> {
+    private final EntityTable table;
+    private final Finder[] finders;             //derived methods, in the order the generated class calls them
+
+    protected TableRepository(EntityTable table, Finder[] finders) {
+        this.table = table;
+        this.finders = finders;
+    }
+
+    public EntityTable getTable() {
+        return table;
+    }
+
+    @Override
+    public Object get(Long id) {
+        return id == null ? null : DatabaseEngine.getInstance().getEntityById(table, id);
+    }
+
+    @Override
+    public List<Object> getAll() {
+        return DatabaseEngine.getInstance().getAllEntities(table);
+    }
+
+    @Override
+    public Iterator<Object> iterateAll() {
+        return DatabaseEngine.getInstance().iterateEntities(table);
+    }
+
+    @Override
+    public List<Object> getPage(int offset, int limit) {
+        return DatabaseEngine.getInstance().getPage(table, 0L, offset, limit);
+    }
+
+    @Override
+    public List<Object> getAfter(Long after, int limit) {
+        return DatabaseEngine.getInstance().getPage(table, after == null ? 0L : after, 0, limit);
+    }
+
+    @Override
+    public List<Map<String, Object>> select(PageRequest page) {
+        if (page == null) {
+            throw new FrameworkException("Wrong arguments for select method");
+        }
+        return DatabaseEngine.getInstance().selectEntities(table, page);
+    }
+
+    @Override
+    public void add(Object object) {
+        if (object != null) {
+            DatabaseEngine.getInstance().insertEntity(table, object);
+        }
+    }
+
+    @Override
+    public void addOwned(Object object) {
+        if (object != null) {
+            DatabaseEngine.getInstance().insertOwned(table, object);
+        }
+    }
+
+    @Override
+    public void addAll(List<Object> objects) {
+        if (objects == null) {
+            throw new FrameworkException("Wrong arguments for addAll method");
+        }
+        DatabaseEngine.getInstance().insertAllEntities(table, objects);
+    }
+
+    @Override
+    public void addAllOwned(List<Object> objects) {
+        if (objects == null) {
+            throw new FrameworkException("Wrong arguments for addAllOwned method");
+        }
+        DatabaseEngine.getInstance().insertAllOwned(table, objects);
+    }
+
+    @Override
+    public void update(Long id, Object object) {
+        if (id == null || object == null) {
+            throw new FrameworkException("Wrong arguments for update method");
+        }
+        DatabaseEngine.getInstance().updateEntity(table, id, object);
+    }
+
+    @Override
+    public void updateOwned(Long id, Object object) {
+        if (id == null || object == null) {
+            throw new FrameworkException("Wrong arguments for updateOwned method");
+        }
+        DatabaseEngine.getInstance().updateOwned(table, id, object);
+    }
+
+    @Override
+    public void updateAll(Map<Long, Object> objects) {
+        if (objects == null) {
+            throw new FrameworkException("Wrong arguments for updateAll method");
+        }
+        DatabaseEngine.getInstance().updateAllEntities(table, objects);
+    }
+
+    @Override
+    public void updateAllOwned(Map<Long, Object> objects) {
+        if (objects == null) {
+            throw new FrameworkException("Wrong arguments for updateAllOwned method");
+        }
+        DatabaseEngine.getInstance().updateAllOwned(table, objects);
+    }
+
+    @Override
+    public void delete(Long id) {
+        if (id != null) {
+            DatabaseEngine.getInstance().deleteEntity(table, id);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> ids) {
+        if (ids == null) {
+            throw new FrameworkException("Wrong arguments for deleteAll method");
+        }
+        DatabaseEngine.getInstance().deleteAllEntities(table, ids);
+    }
+
+    /**
+     * Called by generated findBy methods.
+     * @param finder index of the derived method.
+     * @param first first argument, boxed.
+     * @param second second argument of a Between method, null otherwise.
+     * @return List of entities, or one entity or null.
+     */
+    protected final Object find(int finder, Object first, Object second) {
+        return DatabaseEngine.getInstance().findEntities(table, finders[finder], first, second);
+    }
+
+    @Override
+    public String toString() {
+        return "Repository of " + table.getMetadata().getTableName();
+    }
+}
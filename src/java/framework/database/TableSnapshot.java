@@ -0,0 +1,79 @@
+package framework.database;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable point-in-time view of a table, in id order.
+ * Shares its chunks with the table until the table writes to them,
+ * so it is cheap to take, and writes made after it was taken are never seen.
+ * Iterating is linear, get by position first finds the chunk by counts.
+ */
+public class TableSnapshot extends AbstractList<Object> {
+    private final Object[][] chunks;
+    private final int[] counts;
+    private final int size;
+
+    TableSnapshot(Object[][] chunks, int[] counts, int size) {
+        this.chunks = chunks;
+        this.counts = counts;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        int chunk = 0;
+        while (index >= counts[chunk]) {
+            index -= counts[chunk++];
+        }
+        for (Object row : chunks[chunk]) {
+            if (row != null && index-- == 0) {
+                return row;
+            }
+        }
+        throw new IllegalStateException("Snapshot counts do not match its rows");
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return new Iterator<>() {
+            private int chunk = 0;
+            private int slot = 0;
+            private int returned = 0;
+
+            @Override
+            public boolean hasNext() {
+                return returned < size;
+            }
+
+            @Override
+            public Object next() {
+                if (returned >= size) {
+                    throw new NoSuchElementException();
+                }
+                while (true) {
+                    Object[] rows = chunks[chunk];
+                    if (rows == null || slot == rows.length) {
+                        chunk++;
+                        slot = 0;
+                        continue;
+                    }
+                    Object row = rows[slot++];
+                    if (row != null) {
+                        returned++;
+                        return row;
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,379 @@
+package framework.database;
+
+import framework.exceptions.FrameworkException;
+import framework.logging.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of every insert, update and delete.
+ * Log is split into segment files wal-<number>.log, a new segment
+ * is started when the current one is full or a snapshot is taken,
+ * so segments older than the latest snapshot can simply be deleted.
+ * Records are written by one writer thread, which takes everything
+ * queued since its last write and syncs it with a single fsync (group commit).
+ * Every record is framed as length + CRC32 + payload, so a record torn
+ * by a crash is detected and recovery stops there.
+ * A failed write may leave such a record behind, and replay would drop everything after it,
+ * so after the first failed write the log refuses every record until a restart.
+ */
+public class WriteAheadLog {
+    public static final byte INSERT = 1;
+    public static final byte UPDATE = 2;
+    public static final byte DELETE = 3;
+
+    /// when false, writes return before their record is synced to disk
+    public static final boolean SYNC_COMMIT = Boolean.parseBoolean(System.getProperty("framework.database.syncCommit", "true"));
+
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int MAX_BATCH = 4096;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final BlockingQueue<PendingRecord> queue;
+    private final Thread writer;
+
+    private FileChannel channel;
+    private long segment;                       //number of the segment being written
+    private long segmentSize;
+
+    private final AtomicLong records = new AtomicLong();       //written since start, for throughput
+    private final AtomicLong batches = new AtomicLong();       //fsync calls since start
+    private volatile FrameworkException failure;               //first failed write, no record is taken after it
+
+    public WriteAheadLog(Path directory, long firstSegment) {
+        this.directory = directory;
+        this.queue = new LinkedBlockingQueue<>();
+        try {
+            Files.createDirectories(directory);
+            openSegment(firstSegment);
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to open write-ahead log in: " + directory + " " + e.getMessage());
+        }
+
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queuing one record, meant to be called while the table's write lock is held,
+     * so records of a table are logged in the order changes were applied.
+     * @param operation INSERT, UPDATE or DELETE.
+     * @param metadata of the entity's table.
+     * @param id of the row.
+     * @param entity new row, null for DELETE.
+     * @return future completed once the record is on disk.
+     * @throws FrameworkException if an earlier write failed.
+     */
+    public CompletableFuture<Void> append(byte operation, EntityMetadata metadata, Long id, Object entity) {
+        checkFailure();
+        PendingRecord record = new PendingRecord(encode(operation, metadata, id, entity), 1);
+        queue.add(record);
+        return record.durable;
+    }
+
+    /**
+     * Queuing the records of one batch operation as a single write,
+     * every row is still its own framed record, so replay is the same as for single writes.
+     * @param operation INSERT, UPDATE or DELETE.
+     * @param metadata of the entity's table.
+     * @param ids of the rows.
+     * @param entities new rows, in the order of ids, null for DELETE.
+     * @return future completed once all records are on disk.
+     * @throws FrameworkException if an earlier write failed.
+     */
+    public CompletableFuture<Void> appendAll(byte operation, EntityMetadata metadata, List<Long> ids, List<Object> entities) {
+        checkFailure();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(ids.size() * 64);
+        for (int i = 0; i < ids.size(); i++) {
+            bytes.writeBytes(encode(operation, metadata, ids.get(i), entities == null ? null : entities.get(i)));
+        }
+        PendingRecord record = new PendingRecord(bytes.toByteArray(), ids.size());
+        queue.add(record);
+        return record.durable;
+    }
+
+    /**
+     * Starting a new segment, called before taking a snapshot.
+     * @return number of the new segment, every record queued before this call is in an older one.
+     * @throws FrameworkException if an earlier write failed.
+     */
+    public long rotate() {
+        checkFailure();
+        PendingRecord marker = new PendingRecord(null, 0);
+        queue.add(marker);
+        marker.durable.join();
+        return marker.segment;
+    }
+
+    /**
+     * Deleting segments fully covered by a snapshot.
+     * @param segment first segment that must be kept.
+     */
+    public void deleteSegmentsBefore(long segment) {
+        for (long number : listSegments(directory)) {
+            if (number < segment) {
+                try {
+                    Files.deleteIfExists(segmentPath(directory, number));
+                } catch (IOException e) {
+                    throw new FrameworkException("Failed to delete log segment: " + number);
+                }
+            }
+        }
+    }
+
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * @return records queued but not written yet.
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    private void checkFailure() {
+        FrameworkException failed = failure;
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    /**
+     * Reading all records from the given segment on, in the order they were written.
+     * Replay stops at the first torn or corrupt record, even in an older segment than the last,
+     * records after it may depend on the lost one.
+     * @param directory of the log.
+     * @param fromSegment first segment to read.
+     * @param consumer receives operation, table name, id and the payload positioned at the row.
+     * @return number of records read.
+     */
+    public static long replay(Path directory, long fromSegment, RecordConsumer consumer) {
+        long count = 0;
+        for (long number : listSegments(directory)) {
+            if (number < fromSegment) {
+                continue;
+            }
+            try {
+                ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segmentPath(directory, number)));
+                while (bytes.remaining() >= 8) {
+                    int length = bytes.getInt();
+                    int crc = bytes.getInt();
+                    if (length < 0 || length > bytes.remaining()) {
+                        return stop(number, count);     //torn write at the end of the log
+                    }
+                    byte[] payload = new byte[length];
+                    bytes.get(payload);
+                    CRC32 checksum = new CRC32();
+                    checksum.update(payload);
+                    if ((int) checksum.getValue() != crc) {
+                        return stop(number, count);
+                    }
+
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+                    byte operation = in.readByte();
+                    String table = in.readUTF();
+                    long id = in.readLong();
+                    consumer.accept(operation, table, id, in);
+                    count++;
+                }
+                if (bytes.hasRemaining()) {
+                    return stop(number, count);
+                }
+            } catch (IOException e) {
+                throw new FrameworkException("Failed to replay log segment: " + number + " " + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    private static long stop(long segment, long count) {
+        Log.warn("WriteAheadLog", "Replay stopped at a torn or corrupt record in log segment: {}, after {} records", segment, count);
+        return count;
+    }
+
+    /**
+     * @param directory of the log.
+     * @return numbers of all segments in the directory, in ascending order.
+     */
+    public static List<Long> listSegments(Path directory) {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(segments::add);
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to list log segments in: " + directory);
+        }
+        return segments;
+    }
+
+    private static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static byte[] encode(byte operation, EntityMetadata metadata, Long id, Object entity) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(operation);
+            out.writeUTF(metadata.getTableName());
+            out.writeLong(id);
+            if (entity != null) {
+                RowCodec.write(metadata, entity, out);
+            }
+            out.flush();
+
+            byte[] body = payload.toByteArray();
+            CRC32 checksum = new CRC32();
+            checksum.update(body);
+
+            ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+            record.putInt(body.length);
+            record.putInt((int) checksum.getValue());
+            record.put(body);
+            return record.array();
+        } catch (IOException e) {
+            throw new FrameworkException("Failed to encode log record for table: " + metadata.getTableName());
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+        }
+        segment = number;
+        channel = FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = channel.size();
+    }
+
+    /**
+     * Writer thread, one write and one fsync for everything queued since the last round.
+     */
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                if (failure != null) {
+                    /// queued before the failure was seen, nothing may follow the failed write
+                    fail(batch);
+                    continue;
+                }
+
+                int size = 0;
+                for (PendingRecord record : batch) {
+                    size += record.bytes == null ? 0 : record.bytes.length;
+                }
+                ByteBuffer bytes = ByteBuffer.allocate(size);
+
+                int written = 0;
+                for (PendingRecord record : batch) {
+                    if (record.bytes != null) {
+                        bytes.put(record.bytes);
+                        written += record.count;
+                        continue;
+                    }
+
+                    /// rotation marker, everything before it goes to the old segment
+                    flush(bytes, written);
+                    written = 0;
+                    openSegment(segment + 1);
+                    record.segment = segment;
+                }
+                flush(bytes, written);
+
+                if (segmentSize >= SEGMENT_SIZE) {
+                    openSegment(segment + 1);
+                }
+                for (PendingRecord record : batch) {
+                    record.durable.complete(null);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                failure = new FrameworkException("Failed to write log record " + e.getMessage());
+                fail(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    private void fail(List<PendingRecord> batch) {
+        for (PendingRecord record : batch) {
+            record.durable.completeExceptionally(failure);
+        }
+        batch.clear();
+    }
+
+    private void flush(ByteBuffer bytes, int records) throws IOException {
+        bytes.flip();
+        if (!bytes.hasRemaining()) {
+            bytes.clear();
+            return;
+        }
+        while (bytes.hasRemaining()) {
+            segmentSize += channel.write(bytes);
+        }
+        channel.force(false);
+        bytes.clear();
+
+        this.records.addAndGet(records);
+        this.batches.incrementAndGet();
+    }
+
+    /**
+     * Receives records during replay.
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(byte operation, String table, long id, DataInputStream row) throws IOException;
+    }
+
+    /**
+     * Records waiting for the writer thread, bytes are null for a rotation marker.
+     */
+    private static class PendingRecord {
+        private final byte[] bytes;
+        private final int count;                //records in bytes
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+        private long segment;
+
+        private PendingRecord(byte[] bytes, int count) {
+            this.bytes = bytes;
+            this.count = count;
+        }
+    }
+}
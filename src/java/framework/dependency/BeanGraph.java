@@ -0,0 +1,217 @@
+package framework.dependency;
+
+import framework.annotations.components.Autowired;
+import framework.annotations.components.Controller;
+import framework.exceptions.FrameworkException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Graph of beans (services, controllers, components) and the beans their constructors take.
+ * Constructor of a bean is the one marked @Autowired, else its only constructor, else its no-arg one.
+ * Parameter gets a provided object for its type (a repository) or the one injectable bean assignable to it.
+ * Whole graph is ordered and checked for cycles before anything is created,
+ * then every bean is created on a ForkJoinPool as soon as the beans of its constructor exist,
+ * so beans that do not depend on each other are created in parallel.
+ */
+public class BeanGraph {
+    private final Collection<Class<?>> injectable;                       //beans parameters and fields can get
+    private final Function<Class<?>, Object> provided;                   //type -> object that is not a bean, null if none
+    private final Map<Class<?>, Constructor<?>> constructors = new HashMap<>();
+    private final Map<Class<?>, Class<?>[]> parameterBeans = new HashMap<>();   //bean -> bean class of each parameter, null for provided ones
+
+    /**
+     * @param injectable classes that can be injected, every bean that is not a controller.
+     * @param provided gives objects injected by type without being beans, null for other types.
+     */
+    public BeanGraph(Collection<Class<?>> injectable, Function<Class<?>, Object> provided) {
+        this.injectable = injectable;
+        this.provided = provided;
+    }
+
+    /**
+     * Finding the bean to inject into a parameter or field.
+     * @param type of the parameter or field.
+     * @param requiredBy where it is injected, for the error message.
+     * @return the only injectable class assignable to the type.
+     */
+    public Class<?> beanFor(Class<?> type, String requiredBy) {
+        if (type.isAnnotationPresent(Controller.class)) {
+            throw new FrameworkException("Classes with @Controller annotation cannot be injected. " + requiredBy + " needs: " + type.getName());
+        }
+        Class<?> found = null;
+        for (Class<?> cls : injectable) {
+            if (type.isAssignableFrom(cls)) {
+                if (found != null) {
+                    throw new FrameworkException("Ambiguous dependency: " + requiredBy + " needs: " + type.getName() + ", both " + found.getName() + " and " + cls.getName() + " match");
+                }
+                found = cls;
+            }
+        }
+        if (found == null) {
+            throw new FrameworkException("Unsatisfied dependency: " + requiredBy + " needs: " + type.getName() + ", there is no @Service or @Component of that type");
+        }
+        return found;
+    }
+
+    /**
+     * Creating beans and every bean their constructors need, transitively.
+     * @param roots beans to create.
+     * @param existing beans created before, they are injected but not created again.
+     * @param parallelism threads of the pool the beans are created on.
+     * @return bean class -> new object, in an order where every bean comes after its constructor's beans.
+     */
+    public Map<Class<?>, Object> instantiate(Collection<Class<?>> roots, Map<Class<?>, Object> existing, int parallelism) {
+        List<Class<?>> order = new ArrayList<>();
+        Set<Class<?>> visited = new HashSet<>();
+        for (Class<?> root : roots) {
+            visit(root, existing, visited, new ArrayList<>(), order);
+        }
+        if (order.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Class<?>, CompletableFuture<Object>> futures = new ConcurrentHashMap<>();      //read by running beans while later ones are added
+        existing.forEach((cls, object) -> futures.put(cls, CompletableFuture.completedFuture(object)));
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            /// order is topological, so the futures of a bean's parameters already exist
+            for (Class<?> bean : order) {
+                CompletableFuture<?>[] dependencies = dependencies(bean).stream().map(futures::get).toArray(CompletableFuture[]::new);
+                futures.put(bean, CompletableFuture.allOf(dependencies).thenApplyAsync(done -> create(bean, futures), pool));
+            }
+            CompletableFuture.allOf(order.stream().map(futures::get).toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof FrameworkException frameworkException) {
+                throw frameworkException;
+            }
+            throw new FrameworkException("Failed to create beans: " + e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<Class<?>, Object> created = new LinkedHashMap<>();
+        for (Class<?> bean : order) {
+            created.put(bean, futures.get(bean).join());
+        }
+        return created;
+    }
+
+    /**
+     * Depth first walk over constructor parameters, a bean is added to the order after its dependencies.
+     * @param path beans being visited, from a root to the current one.
+     */
+    private void visit(Class<?> bean, Map<Class<?>, Object> existing, Set<Class<?>> visited, List<Class<?>> path, List<Class<?>> order) {
+        if (existing.containsKey(bean) || visited.contains(bean)) {
+            return;
+        }
+        int start = path.indexOf(bean);
+        if (start >= 0) {
+            String cycle = path.subList(start, path.size()).stream().map(Class::getName).collect(Collectors.joining(" -> "));
+            throw new FrameworkException("Dependency cycle: " + cycle + " -> " + bean.getName()
+                    + ". Constructor parameters can not form a cycle, inject one of these beans through an @Autowired field");
+        }
+
+        path.add(bean);
+        for (Class<?> dependency : dependencies(bean)) {
+            visit(dependency, existing, visited, path, order);
+        }
+        path.remove(path.size() - 1);
+
+        visited.add(bean);
+        order.add(bean);
+    }
+
+    /**
+     * @return bean classes the bean's constructor takes, resolved once.
+     */
+    private List<Class<?>> dependencies(Class<?> bean) {
+        Class<?>[] beans = parameterBeans.get(bean);
+        if (beans == null) {
+            Constructor<?> constructor = constructorOf(bean);
+            Class<?>[] types = constructor.getParameterTypes();
+            beans = new Class<?>[types.length];
+            for (int i = 0; i < types.length; i++) {
+                if (provided.apply(types[i]) == null) {
+                    beans[i] = beanFor(types[i], "Constructor of " + bean.getName());
+                }
+            }
+            constructors.put(bean, constructor);
+            parameterBeans.put(bean, beans);
+        }
+
+        List<Class<?>> dependencies = new ArrayList<>();
+        for (Class<?> dependency : beans) {
+            if (dependency != null) {
+                dependencies.add(dependency);
+            }
+        }
+        return dependencies;
+    }
+
+    private Object create(Class<?> bean, Map<Class<?>, CompletableFuture<Object>> futures) {
+        Constructor<?> constructor = constructors.get(bean);
+        Class<?>[] types = constructor.getParameterTypes();
+        Class<?>[] beans = parameterBeans.get(bean);
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            args[i] = beans[i] == null ? provided.apply(types[i]) : futures.get(beans[i]).join();
+        }
+
+        try {
+            return constructor.newInstance(args);
+        } catch (InvocationTargetException e) {
+            throw new FrameworkException("Failed to create: " + bean.getName() + ", constructor threw: " + e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new FrameworkException("Failed to create: " + bean.getName() + " " + e);
+        }
+    }
+
+    /**
+     * @param bean class of a bean.
+     * @return constructor marked with @Autowired, else the only one, else the one without parameters.
+     */
+    public static Constructor<?> constructorOf(Class<?> bean) {
+        Constructor<?>[] all = bean.getDeclaredConstructors();
+        Constructor<?> chosen = null;
+        for (Constructor<?> constructor : all) {
+            if (constructor.isAnnotationPresent(Autowired.class)) {
+                if (chosen != null) {
+                    throw new FrameworkException("Class: " + bean.getName() + " has more than one @Autowired constructor");
+                }
+                chosen = constructor;
+            }
+        }
+        if (chosen == null && all.length == 1) {
+            chosen = all[0];
+        }
+        if (chosen == null) {
+            for (Constructor<?> constructor : all) {
+                if (constructor.getParameterCount() == 0) {
+                    chosen = constructor;
+                }
+            }
+        }
+        if (chosen == null) {
+            throw new FrameworkException("Class: " + bean.getName() + " has several constructors, mark the one to inject with @Autowired");
+        }
+        chosen.setAccessible(true);
+        return chosen;
+    }
+}
@@ -0,0 +1,164 @@
+package framework.discovery;
+
+import framework.exceptions.FrameworkException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the class-level annotations of a class file without loading the class.
+ * Only the constant pool and the attribute headers are walked,
+ * fields and methods are skipped by their lengths,
+ * so nothing of the class is resolved, linked or initialized.
+ */
+public class ClassFileAnnotations {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final ByteBuffer bytes;
+    private final int[] utf8Offsets;            //constant pool index -> offset of a Utf8 entry, 0 for other entries
+    private final int[] classOffsets;           //constant pool index -> offset of a Class entry's name index, 0 for other entries
+
+    private ClassFileAnnotations(ByteBuffer bytes, int poolCount) {
+        this.bytes = bytes;
+        this.utf8Offsets = new int[poolCount];
+        this.classOffsets = new int[poolCount];
+    }
+
+    /**
+     * Reading the class name and annotations of a class file.
+     * @param classFile bytes of a .class file.
+     * @return binary name of the class (a.b.C$D) and descriptors of its runtime visible annotations (La/b/Ann;).
+     */
+    public static Result read(byte[] classFile) {
+        ByteBuffer bytes = ByteBuffer.wrap(classFile);
+        try {
+            if (bytes.getInt() != MAGIC) {
+                throw new FrameworkException("Not a class file");
+            }
+            bytes.position(8);
+            ClassFileAnnotations reader = new ClassFileAnnotations(bytes, bytes.getShort() & 0xFFFF);
+            return reader.readClass();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new FrameworkException("Malformed class file: " + e);
+        }
+    }
+
+    private Result readClass() {
+        readConstantPool();
+
+        bytes.getShort();                                           //access flags
+        int thisClass = bytes.getShort() & 0xFFFF;
+        bytes.getShort();                                           //super class
+        skip(2 * (bytes.getShort() & 0xFFFF));                      //interfaces
+        skipMembers();                                              //fields
+        skipMembers();                                              //methods
+
+        List<String> annotations = new ArrayList<>();
+        int attributes = bytes.getShort() & 0xFFFF;
+        for (int i = 0; i < attributes; i++) {
+            String name = utf8(bytes.getShort() & 0xFFFF);
+            int length = bytes.getInt();
+            int end = bytes.position() + length;
+            if (name.equals(RUNTIME_VISIBLE_ANNOTATIONS)) {
+                int count = bytes.getShort() & 0xFFFF;
+                for (int j = 0; j < count; j++) {
+                    annotations.add(readAnnotation());
+                }
+            }
+            bytes.position(end);
+        }
+
+        /// Class entry of this class points to the Utf8 entry with its internal name
+        String name = utf8(bytes.getShort(classOffsets[thisClass]) & 0xFFFF);
+        return new Result(name.replace('/', '.'), annotations);
+    }
+
+    private void readConstantPool() {
+        for (int i = 1; i < utf8Offsets.length; i++) {
+            int tag = bytes.get();
+            switch (tag) {
+                case 1 -> {
+                    utf8Offsets[i] = bytes.position();
+                    skip(bytes.getShort() & 0xFFFF);
+                }
+                case 7 -> {
+                    classOffsets[i] = bytes.position();
+                    skip(2);
+                }
+                case 8, 16, 19, 20 -> skip(2);
+                case 15 -> skip(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> skip(4);
+                case 5, 6 -> {
+                    skip(8);
+                    i++;                                            //long and double take two slots
+                }
+                default -> throw new FrameworkException("Unknown constant pool tag: " + tag);
+            }
+        }
+    }
+
+    private void skipMembers() {
+        int count = bytes.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            skip(6);                                                //access flags, name, descriptor
+            int attributes = bytes.getShort() & 0xFFFF;
+            for (int j = 0; j < attributes; j++) {
+                skip(2);
+                skip(bytes.getInt());
+            }
+        }
+    }
+
+    /**
+     * @return descriptor of the annotation, its element values are skipped.
+     */
+    private String readAnnotation() {
+        String type = utf8(bytes.getShort() & 0xFFFF);
+        int pairs = bytes.getShort() & 0xFFFF;
+        for (int i = 0; i < pairs; i++) {
+            skip(2);
+            skipElementValue();
+        }
+        return type;
+    }
+
+    private void skipElementValue() {
+        char tag = (char) bytes.get();
+        switch (tag) {
+            case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 's', 'c' -> skip(2);
+            case 'e' -> skip(4);
+            case '@' -> readAnnotation();
+            case '[' -> {
+                int count = bytes.getShort() & 0xFFFF;
+                for (int i = 0; i < count; i++) {
+                    skipElementValue();
+                }
+            }
+            default -> throw new FrameworkException("Unknown annotation element tag: " + tag);
+        }
+    }
+
+    /// Class files use modified UTF-8, which only differs from UTF-8 for \0 and supplementary characters
+    private String utf8(int index) {
+        int offset = utf8Offsets[index];
+        if (offset == 0) {
+            throw new FrameworkException("Constant: " + index + " is not a Utf8 entry");
+        }
+        int length = bytes.getShort(offset) & 0xFFFF;
+        return new String(bytes.array(), offset + 2, length, StandardCharsets.UTF_8);
+    }
+
+    private void skip(int length) {
+        bytes.position(bytes.position() + length);
+    }
+
+    /**
+     * Name and annotations of one class file.
+     */
+    public record Result(String className, List<String> annotations) {
+    }
+}
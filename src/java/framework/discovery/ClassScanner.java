@@ -0,0 +1,223 @@
+package framework.discovery;
+
+import framework.annotations.components.Component;
+import framework.annotations.components.Controller;
+import framework.annotations.components.Repository;
+import framework.annotations.components.Service;
+import framework.annotations.databases.Entity;
+import framework.exceptions.FrameworkException;
+import framework.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds framework components by reading class files, in directories and in jars,
+ * instead of loading every class to ask for its annotations.
+ * Roots are scanned in parallel and so are the entries of a root. Only the folders and entries
+ * of the scanned packages are read, so jars of libraries cost one look at their list of entries
+ * and a large directory costs only the packages asked for.
+ * Index of a jar is written to the cache directory (framework.scan.cache, default a folder in java.io.tmpdir)
+ * under the hash of the jar's bytes and the packages, so a later start with the same jar
+ * reads that list and opens no class file at all. Directories hold classes still being compiled, they are always scanned.
+ */
+public class ClassScanner {
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JAR_SUFFIX = ".jar";
+    private static final String CACHE_SUFFIX = ".idx";
+    private static final Path CACHE_DIRECTORY = Path.of(System.getProperty("framework.scan.cache",
+            System.getProperty("java.io.tmpdir") + File.separator + "framework-scan"));
+
+    /// Descriptors of the annotations DiscoveryEngine sorts classes by
+    private static final Set<String> COMPONENT_ANNOTATIONS = Set.of(
+            Entity.class.descriptorString(),
+            Repository.class.descriptorString(),
+            Service.class.descriptorString(),
+            Controller.class.descriptorString(),
+            Component.class.descriptorString());
+
+    private ClassScanner() {
+    }
+
+    /**
+     * Scanning roots for the packages, each root on its own in parallel.
+     * @param roots directories of classes and jars, anything else is ignored.
+     * @param packages packages to look in, with their subpackages, empty string for all.
+     * @return names of component classes, sorted.
+     */
+    public static List<String> scan(List<Path> roots, List<String> packages) {
+        return roots.parallelStream()
+                .flatMap(root -> scan(root, packages).stream())
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Scanning one root.
+     * @param root directory of classes or a jar, anything else is ignored.
+     * @param packages packages to look in, with their subpackages, empty string for all.
+     * @return names of component classes in the root, sorted.
+     */
+    public static List<String> scan(Path root, List<String> packages) {
+        List<String> prefixes = packages.stream().map(packageName -> packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/").toList();
+        try {
+            if (Files.isDirectory(root)) {
+                return scanDirectory(root, prefixes);
+            }
+            if (Files.isRegularFile(root) && root.toString().endsWith(JAR_SUFFIX)) {
+                return scanCachedJar(root, prefixes);
+            }
+            return List.of();
+        } catch (IOException | UncheckedIOException e) {
+            throw new FrameworkException("Failed to scan: " + root + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param classFile bytes of a class file.
+     * @return name of the class if it has a component annotation, null otherwise.
+     */
+    public static String componentName(byte[] classFile) {
+        ClassFileAnnotations.Result result = ClassFileAnnotations.read(classFile);
+        for (String annotation : result.annotations()) {
+            if (COMPONENT_ANNOTATIONS.contains(annotation)) {
+                return result.className();
+            }
+        }
+        return null;
+    }
+
+    /// Only the folders of the packages are walked, the rest of the directory is never listed
+    private static List<String> scanDirectory(Path root, List<String> prefixes) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String prefix : prefixes) {
+            Path start = root.resolve(prefix);
+            if (Files.isDirectory(start)) {
+                try (Stream<Path> walk = Files.walk(start)) {
+                    walk.filter(file -> isClassFile(root.relativize(file).toString().replace(File.separatorChar, '/'))).forEach(files::add);
+                }
+            }
+        }
+        return files.parallelStream()
+                .map(file -> componentName(readAllBytes(file)))
+                .filter(Objects::nonNull)
+                .sorted()
+                .toList();
+    }
+
+    /// Listing entries only reads the jar's central directory, library jars without the package are neither hashed nor parsed
+    private static List<String> scanCachedJar(Path jar, List<String> prefixes) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            List<? extends ZipEntry> entries = zip.stream()
+                    .filter(entry -> !entry.isDirectory() && isClassFile(entry.getName()) && inPackages(entry.getName(), prefixes))
+                    .toList();
+            if (entries.isEmpty()) {
+                return List.of();
+            }
+
+            Path cached = CACHE_DIRECTORY.resolve(hash(jar, prefixes) + CACHE_SUFFIX);
+            if (Files.isRegularFile(cached)) {
+                try {
+                    return Files.readAllLines(cached);
+                } catch (IOException e) {
+                    Log.warn("ClassScanner", "Failed to read scan cache {}, scanning {} again", cached, jar);
+                }
+            }
+
+            long start = System.nanoTime();
+            List<String> components = entries.parallelStream()
+                    .map(entry -> componentName(readAllBytes(zip, entry)))
+                    .filter(Objects::nonNull)
+                    .sorted()
+                    .toList();
+            writeCache(cached, components);
+            Log.debug("ClassScanner", "Scanned {} entries of {} in {} ms, {} components", entries.size(), jar, (System.nanoTime() - start) / 1_000_000, components.size());
+            return components;
+        }
+    }
+
+    /// Cache is only a shortcut, a start that can not write it still has the scanned list
+    private static void writeCache(Path cached, List<String> components) {
+        try {
+            Files.createDirectories(cached.getParent());
+            Path temporary = Files.createTempFile(cached.getParent(), cached.getFileName().toString(), ".tmp");
+            Files.write(temporary, components);
+            try {
+                Files.move(temporary, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, cached, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Log.warn("ClassScanner", "Failed to write scan cache {}: {}", cached, e.getMessage());
+        }
+    }
+
+    /**
+     * @return SHA-256 of the jar's bytes and the scanned packages, in hex.
+     */
+    private static String hash(Path jar, List<String> prefixes) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(jar)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            digest.update(String.join(",", prefixes).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new FrameworkException("SHA-256 is not available");
+        }
+    }
+
+    private static boolean inPackages(String path, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// module-info, package-info and multi-release copies under META-INF are not components
+    private static boolean isClassFile(String path) {
+        return path.endsWith(CLASS_SUFFIX) && !path.startsWith("META-INF/")
+                && !path.endsWith("module-info.class") && !path.endsWith("package-info.class");
+    }
+
+    private static byte[] readAllBytes(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] readAllBytes(ZipFile zip, ZipEntry entry) {
+        try (InputStream in = zip.getInputStream(entry)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
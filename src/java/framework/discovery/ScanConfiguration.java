@@ -0,0 +1,147 @@
+package framework.discovery;
+
+import framework.annotations.components.Application;
+import framework.exceptions.FrameworkException;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What DiscoveryEngine scans: base packages and scan roots,
+ * taken from system properties, else from @Application on the main class, else from the class path
+ * and the package of the main class. Also gives the class loader that can load classes of every root.
+ */
+public class ScanConfiguration {
+    private static final String PACKAGES_PROPERTY = "framework.scan.packages";
+    private static final String ROOTS_PROPERTY = "framework.scan.roots";
+
+    private final List<String> packages;        //sorted, none inside another
+    private final List<Path> roots;
+    private final ClassLoader classLoader;
+
+    private ScanConfiguration(List<String> packages, List<Path> roots, ClassLoader classLoader) {
+        this.packages = packages;
+        this.roots = roots;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @param mainClass class whose main method started the framework.
+     * @return configuration of the application.
+     */
+    public static ScanConfiguration of(Class<?> mainClass) {
+        Application application = mainClass.getAnnotation(Application.class);
+
+        List<String> packages = split(System.getProperty(PACKAGES_PROPERTY), ",");
+        if (packages.isEmpty() && application != null) {
+            packages = Arrays.asList(application.packages());
+        }
+        if (packages.isEmpty()) {
+            packages = List.of(mainClass.getPackageName());
+        }
+
+        List<String> rootNames = split(System.getProperty(ROOTS_PROPERTY), File.pathSeparator);
+        if (rootNames.isEmpty() && application != null) {
+            rootNames = Arrays.asList(application.roots());
+        }
+        List<Path> roots = rootNames.isEmpty() ? classPath() : rootNames.stream().map(Path::of).toList();
+
+        return new ScanConfiguration(normalize(packages), roots, classLoader(mainClass.getClassLoader(), roots));
+    }
+
+    /**
+     * @return every directory and jar of java.class.path.
+     */
+    public static List<Path> classPath() {
+        return split(System.getProperty("java.class.path"), File.pathSeparator).stream().map(Path::of).toList();
+    }
+
+    public List<String> getPackages() {
+        return packages;
+    }
+
+    public List<Path> getRoots() {
+        return roots;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * @param className binary name of a class.
+     * @return true if the class is in one of the packages or their subpackages.
+     */
+    public boolean isScanned(String className) {
+        for (String packageName : packages) {
+            if (packageName.isEmpty() || className.startsWith(packageName + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// Sorted, so a package comes right before its subpackages, which are then left out as they are scanned with it
+    private static List<String> normalize(List<String> packages) {
+        List<String> sorted = new ArrayList<>();
+        for (String packageName : packages) {
+            String trimmed = packageName.trim();
+            if (!trimmed.isEmpty() && !trimmed.matches("[\\p{javaJavaIdentifierPart}.]+")) {
+                throw new FrameworkException("Invalid package to scan: " + packageName);
+            }
+            sorted.add(trimmed);
+        }
+        sorted.sort(null);
+
+        List<String> result = new ArrayList<>();
+        for (String packageName : sorted) {
+            String last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last == null || !(last.isEmpty() || packageName.equals(last) || packageName.startsWith(last + "."))) {
+                result.add(packageName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Roots already on the class path are loaded by the application class loader,
+     * the others by a child of it, so their classes still see the framework.
+     */
+    private static ClassLoader classLoader(ClassLoader parent, List<Path> roots) {
+        Set<Path> classPath = new LinkedHashSet<>();
+        for (Path entry : classPath()) {
+            classPath.add(entry.toAbsolutePath().normalize());
+        }
+
+        List<URL> extra = new ArrayList<>();
+        for (Path root : roots) {
+            if (!Files.exists(root)) {
+                throw new FrameworkException("Scan root not found: " + root.toAbsolutePath());
+            }
+            if (!classPath.contains(root.toAbsolutePath().normalize())) {
+                try {
+                    extra.add(root.toUri().toURL());
+                } catch (MalformedURLException e) {
+                    throw new FrameworkException("Invalid scan root: " + root);
+                }
+            }
+        }
+        return extra.isEmpty() ? parent : new URLClassLoader("framework-scan-roots", extra.toArray(new URL[0]), parent);
+    }
+
+    private static List<String> split(String value, String separator) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(separator)).map(String::trim).filter(part -> !part.isEmpty()).toList();
+    }
+}
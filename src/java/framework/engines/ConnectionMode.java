@@ -0,0 +1,12 @@
+package framework.engines;
+
+/**
+ * How ServerEngine hands accepted connections to request threads.
+ * Selected at startup with the framework.server.mode system property.
+ */
+public enum ConnectionMode {
+    /// one virtual thread per connection, bounded by the connection limit
+    VIRTUAL,
+    /// one selector thread watching all sockets, requests run on a bounded worker pool
+    SELECTOR,
+}
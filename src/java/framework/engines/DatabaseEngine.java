@@ -2,41 +2,60 @@ package framework.engines;
 
 import framework.annotations.components.Repository;
 import framework.annotations.databases.Entity;
-import framework.annotations.databases.Id;
+import framework.database.DurableStorage;
+import framework.database.EntityField;
+import framework.database.EntityMetadata;
+import framework.database.EntityTable;
+import framework.database.Finder;
+import framework.database.PageRequest;
+import framework.database.RepositoryGenerator;
 import framework.exceptions.FrameworkException;
 import framework.interfaces.FrameworkRepository;
+import framework.logging.Log;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Creates a database for all classes annotated with @Entity annotation.
- * Maps Repository to it's entity class name.
+ * Maps Repository to it's entity class name,
+ * and generates the repository's implementation bound to the table.
  * Inserts new entities into database.
  * Removes entities from database.
  * Gets all entities from database.
+ * Gets one page of entities, with only the selected fields if asked.
  * Gets entity by id from database.
- * Creates an object from JSON map.
+ * Finds entities by @Indexed fields for derived repository methods.
+ * Stores entities bound from a request body without copying them.
+ * Every table has its own lock and id counter,
+ * so request threads can use the database concurrently.
+ * With framework.database.dir set, tables are also kept on disk,
+ * see DurableStorage.
  */
 public class DatabaseEngine {
     private static volatile DatabaseEngine instance = null;
-    private static Long idCounter = 1L;
 
-    private static Map<Class<?>, List<Object>> database;            //class -> list of entities
-    private static Map<String, String> repositoryToEntityMap;       //repository name -> class name
+    private static Map<Class<?>, EntityTable> database;             //class -> table of entities
+    private static Map<Class<?>, Object> repositories;               //repository class -> generated implementation
 
     private DatabaseEngine() {
         database = new HashMap<>();
-        repositoryToEntityMap = new HashMap<>();
+        repositories = new HashMap<>();
     }
 
     public static DatabaseEngine getInstance() {
         if (instance == null) {
-            instance = new DatabaseEngine();
+            synchronized (DatabaseEngine.class) {
+                if (instance == null) {
+                    instance = new DatabaseEngine();
+                }
+            }
         }
         return instance;
     }
@@ -47,25 +66,17 @@ public class DatabaseEngine {
      */
     protected void createDatabase(List<Class<?>> classes) {
         for (Class<?> cls : classes) {
-            boolean found = false;
-            for (Field field : cls.getDeclaredFields()){
-                if (field.isAnnotationPresent(Id.class)) {
-                    if (field.getType() != Long.class){
-                        throw new FrameworkException("Field: " + field.getName() + " of class: " + cls.getName() + " must be of type Long");
-                    }
-                    database.put(cls, new ArrayList<>());
-                    found = true;
-                    break;
-                }
-            }
-            if (!found){
-                throw new FrameworkException("Class: " + cls.getName() + " does not have @Id annotation");
-            }
+            database.put(cls, new EntityTable(EntityMetadata.of(cls)));
+        }
+
+        String directory = System.getProperty("framework.database.dir");
+        if (directory != null) {
+            DurableStorage.open(Path.of(directory), database.values());
         }
     }
 
     /**
-     * Mapping Repository to it's entity class name.
+     * Mapping Repository to it's entity table.
      * @param classes List of classes annotated with @Repository annotation.
      */
     protected void mapRepositoryToEntity(List<Class<?>> classes) {
@@ -74,7 +85,8 @@ public class DatabaseEngine {
                 if (!cls.getAnnotation(Repository.class).entity().isAnnotationPresent(Entity.class)){
                     throw new FrameworkException("Class name you provided in @Repository annotation: " + cls.getAnnotation(Repository.class).entity().getName() + " doesn't have @Entity annotation");
                 }
-                repositoryToEntityMap.put(cls.getName(), cls.getAnnotation(Repository.class).entity().getName());
+                EntityTable table = database.get(cls.getAnnotation(Repository.class).entity());
+                repositories.put(cls, RepositoryGenerator.generate(cls, table));
             }
             else{
                 throw new FrameworkException("Class: " + cls.getName() + " with @Repository annotation does not implement FrameworkRepository interface.");
@@ -83,238 +95,297 @@ public class DatabaseEngine {
     }
 
     /**
-     * GET one entity from the database table by id
-     * @param repositoryName name of repository.
-     * @param id of entity in the database table.
-     * @return Object of entity with given id.
+     * GET one page of entities in id order.
+     * @param table of the repository.
+     * @param after rows with id greater than this, 0 from the start.
+     * @param offset rows to skip after that.
+     * @param limit most rows to return, capped at PageRequest.MAX_LIMIT.
+     * @return entities of the page.
      */
-    public Object getEntityById(String repositoryName, Long id) throws ClassNotFoundException, IllegalAccessException {
-        Class<?> clazz = Class.forName(repositoryToEntityMap.get(repositoryName));
-        List<Object> objectList = database.get(clazz);
-
-        for (Object obj : objectList) {
-            for (Field field : clazz.getDeclaredFields()) {
-                if (field.isAnnotationPresent(Id.class)) {
-                    field.setAccessible(true);
-                    Object fieldValue = field.get(obj);
-
-                    if (fieldValue.equals(id)) {
-                        return obj;
-                    }
-                }
+    public List<Object> getPage(EntityTable table, long after, int offset, int limit) {
+        if (after < 0 || offset < 0 || limit < 1) {
+            throw new FrameworkException("Page needs after >= 0, offset >= 0 and limit >= 1");
+        }
+        return table.getPage(after, offset, Math.min(limit, PageRequest.MAX_LIMIT));
+    }
+
+    /**
+     * GET one page with only the selected fields of each entity.
+     * @param table of the repository.
+     * @param page requested page and fields.
+     * @return id and selected fields of every entity, in the order the fields were asked for.
+     */
+    public List<Map<String, Object>> selectEntities(EntityTable table, PageRequest page) {
+        EntityMetadata metadata = table.getMetadata();
+        List<EntityField> fields = new ArrayList<>();
+        if (page.getFields().isEmpty()) {
+            fields.addAll(metadata.getFields());
+        }
+        for (String name : page.getFields()) {
+            EntityField field = metadata.getField(name);
+            if (field == null && !name.equals(metadata.getIdField().getName())) {
+                throw new FrameworkException("Entity: " + table.getEntityClass().getName() + " has no field: " + name);
+            }
+            if (field != null) {
+                fields.add(field);
+            }
+        }
+
+        List<Object> entities = table.getPage(page.getAfter(), page.getOffset(), page.getLimit());
+        List<Map<String, Object>> rows = new ArrayList<>(entities.size());
+        for (Object entity : entities) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(metadata.getIdField().getName(), metadata.getId(entity));
+            for (EntityField field : fields) {
+                row.put(field.getName(), field.get(entity));
             }
+            rows.add(row);
         }
+        return rows;
+    }
+
+    /**
+     * @param repository class annotated with @Repository annotation.
+     * @return generated implementation of the repository, bound to its table.
+     */
+    protected Object getRepository(Class<?> repository) {
+        Object implementation = repositories.get(repository);
+        if (implementation == null){
+            throw new FrameworkException("Class: " + repository.getName() + " is not a registered @Repository");
+        }
+        return implementation;
+    }
 
-        return null;
+    /**
+     * @param cls any class.
+     * @return true if the class is a registered @Repository.
+     */
+    protected boolean isRepository(Class<?> cls) {
+        return repositories.containsKey(cls);
+    }
+
+    /**
+     * @param cls any class.
+     * @return true if the class has a table in the database.
+     */
+    protected boolean isEntity(Class<?> cls) {
+        return database.containsKey(cls);
+    }
+
+    /**
+     * GET one entity from the database table by id
+     * @param table of the repository.
+     * @param id of entity in the database table.
+     * @return Object of entity with given id.
+     */
+    public Object getEntityById(EntityTable table, Long id) {
+        return table.get(id);
     }
 
     /**
      * GET all entities from the database table.
-     * @param repositoryName name of repository.
+     * @param table of the repository.
+     * @return immutable point-in-time snapshot, cheap to take, safe to serialize while the table changes.
      */
-    public List<Object> getAllEntities(String repositoryName) throws ClassNotFoundException {
-        return database.get(Class.forName(repositoryToEntityMap.get(repositoryName)));
+    public List<Object> getAllEntities(EntityTable table) {
+        return table.getAll();
+    }
+
+    /**
+     * ITERATE over all entities from the database table, page by page.
+     * @param table of the repository.
+     * @return weakly consistent iterator, never copies the table nor blocks writers for long.
+     */
+    public Iterator<Object> iterateEntities(EntityTable table) {
+        return table.iterate();
+    }
+
+    /**
+     * FIND entities through an index of the table.
+     * @param table of the repository.
+     * @param finder compiled derived method.
+     * @param first argument of the repository call.
+     * @param second argument of a Between method, ignored otherwise.
+     * @return List of entities, or one entity.
+     */
+    public Object findEntities(EntityTable table, Finder finder, Object first, Object second) {
+        return finder.find(table, first, second);
     }
 
     /**
      * Saving Object into the database.
      * Chceks if provided entity can be inserted in the repository.
-     * @param repositoryName Repository name to insert the entity into the database.
+     * A copy is stored, so the caller's object is never shared with the table.
+     * @param table of the repository to insert the entity into.
      * @param entity object to be inserted into a database.
      */
-    public void insertEntity(String repositoryName, Object entity) throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        String entityName = repositoryToEntityMap.get(repositoryName);
-        if (entityName == null){
-            throw new FrameworkException("Repository: " + repositoryName + " is not working with Entity you provided");
-        }
+    public void insertEntity(EntityTable table, Object entity) {
+        insert(table, entity, false);
+    }
 
-        Class<?> clazz = Class.forName(entityName);
-        Object obj = clazz.getDeclaredConstructor().newInstance();
+    /**
+     * Saving Object into the database without copying it, the table keeps the object itself.
+     * For objects nothing else holds, like the ones bound from a request body.
+     * @param table of the repository to insert the entity into.
+     * @param entity object to be inserted into a database, the caller must not change it afterwards.
+     */
+    public void insertOwned(EntityTable table, Object entity) {
+        insert(table, entity, true);
+    }
 
-        for (Field field : clazz.getDeclaredFields()) {
-            field.setAccessible(true);
+    private void insert(EntityTable table, Object entity, boolean owned) {
+        checkEntity(table, entity);
 
-            if (field.isAnnotationPresent(Id.class)) {
-                Long generatedId = getNextId();
-                field.set(obj, generatedId);
-            }
-            else {
-                Field sourceField;
-                try {
-                    sourceField = entity.getClass().getDeclaredField(field.getName());
-                    sourceField.setAccessible(true);
-                    field.set(obj, sourceField.get(entity));
-                } catch (NoSuchFieldException e) {
-                    throw new FrameworkException("No such filed in entity");
-                }
-            }
-        }
-
-        database.get(clazz).add(obj);       //inserting into database
-        //TODO
-        for (Class<?> cls : database.keySet()){
-            List<Object> objectList = database.get(cls);
-            objectList.forEach(System.out::println);
-            System.out.println("------------------------------------------");
-        }
+        Object obj = owned ? withId(table.getMetadata(), entity, table.nextId()) : copyEntity(table.getMetadata(), entity, table.nextId());
+        table.insert(obj);                  //inserting into database
+        Log.debug("DatabaseEngine", "Inserted into {}: {}", table.getMetadata().getTableName(), obj);
     }
 
     /**
-     * Update old entity with new entity.
-     * @param repositoryName name of repository.
-     * @param entity to be put into the database.
-     * @param id of entity in the database table.
+     * Saving many Objects into the database at once, as copies.
+     * Ids are taken as one block, the table is locked and logged once for the whole batch.
+     * @param table of the repository to insert the entities into.
+     * @param entities objects to be inserted into a database.
      */
-    public void updateEntity(String repositoryName, Long id, Object entity) throws ClassNotFoundException, IllegalAccessException {
-        String entityName = repositoryToEntityMap.get(repositoryName);
-        if (entityName == null){
-            throw new FrameworkException("Repository: " + repositoryName + " is not working with Entity you provided");
-        }
+    public void insertAllEntities(EntityTable table, List<?> entities) {
+        insertAll(table, entities, false);
+    }
 
-        Class<?> clazz = Class.forName(entityName);
-        Field field = null;
+    /**
+     * Saving many Objects into the database at once, the table keeps the objects themselves.
+     * @param table of the repository to insert the entities into.
+     * @param entities objects to be inserted into a database, the caller must not change them afterwards.
+     */
+    public void insertAllOwned(EntityTable table, List<?> entities) {
+        insertAll(table, entities, true);
+    }
 
-        for (Field classField : clazz.getDeclaredFields()) {
-            classField.setAccessible(true);
-            if (classField.isAnnotationPresent(Id.class)) {
-                field = classField;
-                break;
-            }
+    private void insertAll(EntityTable table, List<?> entities, boolean owned) {
+        for (Object entity : entities) {
+            checkEntity(table, entity);
         }
-
-        if (field == null){
-            throw new FrameworkException("No Id field in entity: " + entityName);
+        if (entities.isEmpty()) {
+            return;
         }
 
-        for (Object obj : database.get(clazz)) {
-            if (field.get(obj) == id){
-                database.get(clazz).add(entity);
-                database.get(clazz).remove(obj);
-                break;
-            }
+        EntityMetadata metadata = table.getMetadata();
+        long firstId = table.reserveIds(entities.size());
+        List<Object> rows = new ArrayList<>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            Object entity = entities.get(i);
+            rows.add(owned ? withId(metadata, entity, firstId + i) : copyEntity(metadata, entity, firstId + i));
         }
+        table.insertAll(rows);
     }
 
     /**
-     * DELETE entity from the database table by id param.
-     * @param repositoryName name of repository.
+     * Update old entity with a copy of new entity, in place.
+     * @param table of the repository.
+     * @param entity to be put into the database.
      * @param id of entity in the database table.
+     * @throws framework.exceptions.ConflictException if the entity's @Version is not the stored one.
      */
-    public void deleteEntity(String repositoryName, Long id) throws ClassNotFoundException, IllegalAccessException {
-        Class<?> clazz = Class.forName(repositoryToEntityMap.get(repositoryName));
-        List<Object> objectList = database.get(clazz);
-
-        for (Object obj : objectList) {
-            for (Field field : clazz.getDeclaredFields()) {
-                if (field.isAnnotationPresent(Id.class)) {
-                    field.setAccessible(true);
-                    Object fieldValue = field.get(obj);
-
-                    if (fieldValue.equals(id)) {
-                        database.get(clazz).remove(obj);
-                        return;
-                    }
-                }
-            }
-        }
+    public void updateEntity(EntityTable table, Long id, Object entity) {
+        checkEntity(table, entity);
+        table.update(id, copyEntity(table.getMetadata(), entity, id));
     }
 
     /**
-     * Creating an entity object from JSON map.
-     * @param className Name of the entity class.
-     * @param jsonMap from request.
-     * @return Object to be inserted into a database.
+     * Update old entity with new entity, in place, the table keeps the new object itself.
+     * @param table of the repository.
+     * @param entity to be put into the database, the caller must not change it afterwards.
+     * @param id of entity in the database table.
+     * @throws framework.exceptions.ConflictException if the entity's @Version is not the stored one.
      */
-    protected Object createEntity(String className, HashMap<String, String> jsonMap, Long id) throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        Class<?> cls = Class.forName(className);
-        if (!checkPostParams(cls, jsonMap)){
-            throw new FrameworkException("JSON map does not match with given class: " + className);
-        }
-        if (!database.containsKey(cls)){
-            throw new FrameworkException("Class: " + className + " does not have @Entity annotation");
-        }
-
-        Object obj = cls.getDeclaredConstructor().newInstance();
+    public void updateOwned(EntityTable table, Long id, Object entity) {
+        checkEntity(table, entity);
+        table.update(id, entity);
+    }
 
-        for (Field field : cls.getDeclaredFields()) {
-            if (!field.isAnnotationPresent(Id.class)) {
-                field.setAccessible(true);
-                String value = jsonMap.get(field.getName());
-                if (value != null) {
-                    field.set(obj, convertValue(field.getType(), value));   //set object's field value
-                }
-                else {
-                    field.set(obj, null);
-                }
-            }
-            else if (field.isAnnotationPresent(Id.class) && id != null)
-            {
-                field.setAccessible(true);
-                field.set(obj, id);
-            }
+    /**
+     * Update many old entities at once with copies of the new ones, ids with no entity are skipped.
+     * @param table of the repository.
+     * @param entities id -> entity to be put into the database.
+     * @throws framework.exceptions.ConflictException if one @Version is not the stored one, nothing is updated then.
+     */
+    public void updateAllEntities(EntityTable table, Map<Long, ?> entities) {
+        Map<Long, Object> copies = new LinkedHashMap<>();
+        for (Map.Entry<Long, ?> entry : entities.entrySet()) {
+            checkEntity(table, entry.getValue());
+            copies.put(entry.getKey(), copyEntity(table.getMetadata(), entry.getValue(), entry.getKey()));
         }
-
-        return obj;
+        table.updateAll(copies);
     }
 
     /**
-     * Checks if the class's object we want to create and JSON map,
-     * have the same attributes.
-     * @param cls class name.
-     * @param jsonMap map from request.
-     * @return true if JSON map matches with class fields, false otherwise.
+     * Update many old entities at once, the table keeps the new objects themselves.
+     * @param table of the repository.
+     * @param entities id -> entity to be put into the database, the caller must not change them afterwards.
+     * @throws framework.exceptions.ConflictException if one @Version is not the stored one, nothing is updated then.
      */
-    private boolean checkPostParams(Class<?> cls, HashMap<String, String> jsonMap) {
-        if (jsonMap.size() != cls.getDeclaredFields().length - 1) {
-            return false;
+    @SuppressWarnings("unchecked")
+    public void updateAllOwned(EntityTable table, Map<Long, ?> entities) {
+        for (Object entity : entities.values()) {
+            checkEntity(table, entity);
         }
+        table.updateAll((Map<Long, Object>) entities);
+    }
 
-        int counter = jsonMap.size();
-        for (Field field : cls.getDeclaredFields()) {
-            if (field.isAnnotationPresent(Id.class)) {
-                continue;
-            }
-            if (jsonMap.containsKey(field.getName())) {
-                counter--;
-            }
-        }
-        return counter <= 1;
+    /**
+     * DELETE many entities from the database table at once, ids with no entity are skipped.
+     * @param table of the repository.
+     * @param ids of entities in the database table.
+     */
+    public void deleteAllEntities(EntityTable table, Collection<Long> ids) {
+        table.deleteAll(ids);
     }
 
     /**
-     * Assigning primary key value for new entities
-     * @return next Long value for Id filed
+     * DELETE entity from the database table by id param.
+     * @param table of the repository.
+     * @param id of entity in the database table.
      */
-    private static Long getNextId(){
-        return idCounter++;
+    public void deleteEntity(EntityTable table, Long id) {
+        table.delete(id);
     }
 
     /**
-     * Converting data from JSON to
-     * match with the object's field data type
-     * @param type data type object needs
-     * @param value from JSON
-     * @return converted value
+     * Metadata of an entity class, for binding request bodies.
+     * @param cls the entity class.
+     * @return metadata of the class.
      */
-    private Object convertValue(Class<?> type, String value) {
-        if (type == String.class) {
-            return value;
-        }
-        else if (type == int.class || type == Integer.class) {
-            return Integer.parseInt(value);
-        }
-        else if (type == long.class || type == Long.class) {
-            return Long.parseLong(value);
-        }
-        else if (type == boolean.class || type == Boolean.class) {
-            return Boolean.parseBoolean(value);
+    protected EntityMetadata getMetadata(Class<?> cls) {
+        EntityTable table = database.get(cls);
+        if (table == null){
+            throw new FrameworkException("Class: " + cls.getName() + " does not have @Entity annotation");
         }
-        else if (type == double.class || type == Double.class) {
-            return Double.parseDouble(value);
+        return table.getMetadata();
+    }
+
+    private static void checkEntity(EntityTable table, Object entity) {
+        if (!table.getEntityClass().isInstance(entity)){
+            throw new FrameworkException("Table: " + table.getEntityClass().getName() + " is not working with Entity you provided");
         }
-        else if (type == float.class || type == Float.class) {
-            return Float.parseFloat(value);
+    }
+
+    private static Object withId(EntityMetadata metadata, Object entity, Long id) {
+        metadata.setId(entity, id);
+        return entity;
+    }
+
+    /**
+     * Copying the fields of an entity into a new object, so the caller's object is never stored.
+     * @param metadata of the entity class.
+     * @param entity object given by the caller.
+     * @param id primary key of the new object.
+     * @return new object to be stored.
+     */
+    private static Object copyEntity(EntityMetadata metadata, Object entity, Long id) {
+        Object obj = metadata.newInstance();
+        metadata.setId(obj, id);
+        for (EntityField field : metadata.getFields()) {
+            field.set(obj, field.get(entity));
         }
-        throw new FrameworkException("Unsupported field type: " + type);
+        return obj;
     }
 }
@@ -2,37 +2,45 @@ package framework.engines;
 
 import framework.annotations.components.Autowired;
 import framework.annotations.components.Controller;
+import framework.annotations.components.Repository;
 import framework.annotations.components.Service;
 import framework.annotations.methodes.Delete;
 import framework.annotations.methodes.Get;
 import framework.annotations.methodes.Post;
 import framework.annotations.methodes.Put;
+import framework.conversion.Converters;
+import framework.dependency.BeanGraph;
 import framework.exceptions.FrameworkException;
 import framework.http.responses.Response;
+import framework.interfaces.TypeConverter;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Creates new instances of classes
  * annotated with @Service, @Controller, @Component.
- * Injects instances if annotation @Autowired
- * is present as filed annotation in the class.
+ * Constructor parameters are injected, see BeanGraph: beans are created
+ * in dependency order, in parallel, and a cycle of constructors is an error.
+ * Then fields are injected: @Autowired fields of services and components,
+ * fields of a @Service type in controllers,
+ * and fields of a @Repository type in every bean, with the repository's generated implementation.
+ * Components implementing TypeConverter are created first,
+ * so entity fields can resolve them.
  */
 public class DependencyEngine {
+    private static final int PARALLELISM = Integer.getInteger("framework.dependency.parallelism", Runtime.getRuntime().availableProcessors());
     private static volatile DependencyEngine instance = null;
 
-    private static Map<String, Object> serviceMap;      //class name -> service object
-    private static Map<String, Object> controllerMap;   //class name -> controller object
-    private static Map<String, Object> componentMap;    //class name -> component object
+    private static Map<Class<?>, Object> beanMap;       //class -> object, every service, controller and component
 
     private DependencyEngine() {
-        serviceMap = new HashMap<>();
-        controllerMap = new HashMap<>();
-        componentMap = new HashMap<>();
+        beanMap = new LinkedHashMap<>();
     }
 
     protected static DependencyEngine getInstance() {
@@ -42,91 +50,109 @@ public class DependencyEngine {
         return instance;
     }
 
-    protected void creteService(List<Class<?>> classes) throws Exception {
-        for (Class<?> cls : classes) {
-            Object obj = cls.getDeclaredConstructor().newInstance();
-            serviceMap.put(cls.getName(), obj);
+    /**
+     * Creating and registering components that implement TypeConverter,
+     * called before the database is created, createBeans then reuses these objects.
+     * Converter constructors can take other components, repositories do not exist yet.
+     * @param classes List of classes annotated with @Component annotation.
+     */
+    protected void createConverters(List<Class<?>> classes) {
+        List<Class<?>> converters = classes.stream().filter(TypeConverter.class::isAssignableFrom).toList();
+        BeanGraph graph = new BeanGraph(classes, type -> {
+            if (type.isAnnotationPresent(Repository.class)) {
+                throw new FrameworkException("TypeConverter components are created before repositories, they can not take: " + type.getName());
+            }
+            return null;
+        });
+        beanMap.putAll(graph.instantiate(converters, beanMap, PARALLELISM));
+
+        for (Class<?> cls : converters) {
+            Converters.register((TypeConverter<?>) beanMap.get(cls));
         }
     }
 
-    protected void creteController(List<Class<?>> classes) throws Exception {
-        for (Class<?> cls : classes) {
+    /**
+     * Creating every bean, injecting their fields and registering the routes of controllers.
+     * @param services List of classes annotated with @Service annotation.
+     * @param controllers List of classes annotated with @Controller annotation.
+     * @param components List of classes annotated with @Component annotation.
+     */
+    protected void createBeans(List<Class<?>> services, List<Class<?>> controllers, List<Class<?>> components) throws IllegalAccessException {
+        for (Class<?> cls : controllers) {
             for (Field field : cls.getDeclaredFields()){
                 /// Forbidden to use @Autowired in Controller classes
                 if (field.isAnnotationPresent(Autowired.class)){
                     throw new FrameworkException("Forbidden to use @Autowired annotation in @Controller classes. Class: " + cls.getName() + " has @Autowired annotation in field: " + field.getName() );
                 }
             }
+        }
 
-            Object obj = cls.getDeclaredConstructor().newInstance();
-            controllerMap.put(cls.getName(), obj);
+        List<Class<?>> injectable = new ArrayList<>(services);
+        injectable.addAll(components);
+        List<Class<?>> beans = new ArrayList<>(injectable);
+        beans.addAll(controllers);
 
-            String controllerPath = cls.getAnnotation(Controller.class).path();
+        BeanGraph graph = new BeanGraph(injectable, this::repositoryFor);
+        beanMap.putAll(graph.instantiate(beans, beanMap, PARALLELISM));
 
-            for (Method method : cls.getDeclaredMethods()){
-                if (method.isAnnotationPresent(Get.class)){
-                    if (method.getReturnType() != Response.class){
-                        throw new FrameworkException("Method with @Get annotation must return Response object. Method: " + method.getName() + " in class: " + cls.getName() + " does not return Response object");
-                    }
-                    ServerEngine.getInstance().insertMethod("GET " + controllerPath + method.getAnnotation(Get.class).path(), method, obj);
-                    continue;
-                }
-                if (method.isAnnotationPresent(Post.class)){
-                    ServerEngine.getInstance().insertMethod("POST " + controllerPath + method.getAnnotation(Post.class).path(), method, obj);
-                    continue;
-                }
-                if (method.isAnnotationPresent(Put.class)){
-                    ServerEngine.getInstance().insertMethod("PUT " + controllerPath + method.getAnnotation(Put.class).path(), method, obj);
-                    continue;
-                }
-                if (method.isAnnotationPresent(Delete.class)){
-                    ServerEngine.getInstance().insertMethod("DELETE " + controllerPath + method.getAnnotation(Delete.class).path(), method, obj);
-                    continue;
-                }
-            }
+        for (Class<?> cls : beans) {
+            injectFields(graph, beanMap.get(cls), controllers.contains(cls));
         }
-    }
-
-    protected void createComponents(List<Class<?>> classes) throws Exception {
-        for (Class<?> cls : classes) {
-            for (Field field : cls.getDeclaredFields()){
-                if (field.isAnnotationPresent(Autowired.class)){
-                    throw new FrameworkException("Forbidden to use @Autowired in @Component classes. Class: " + cls.getName() + " has @Autowired annotation in field: " + field.getName());
-                }
-            }
-
-            Object obj = cls.getDeclaredConstructor().newInstance();
-            componentMap.put(cls.getName(), obj);
+        for (Class<?> cls : controllers) {
+            insertRoutes(cls, beanMap.get(cls));
         }
     }
 
-    protected void injectDependencies() throws IllegalAccessException {
-
-        /// inserting components into service classes
-        for (String serviceName : serviceMap.keySet()){
-            Object serviceObject = serviceMap.get(serviceName);
+    /**
+     * @return generated repository for the type, null if it is not a repository.
+     */
+    private Object repositoryFor(Class<?> type) {
+        return DatabaseEngine.getInstance().isRepository(type) ? DatabaseEngine.getInstance().getRepository(type) : null;
+    }
 
-            for (Field field : serviceObject.getClass().getDeclaredFields()){
-                if (field.isAnnotationPresent(Autowired.class)) {
-                    if (field.getType().isAnnotationPresent(Controller.class)){
-                        throw new FrameworkException("Classes with @Controller annotation cannot be injected into @Service classes with @Autowired. Class: " + serviceObject.getClass().getName() + " has @Autowired annotation in field: " + field.getName());
-                    }
+    /**
+     * Fields are injected after every bean exists, so beans can refer to each other through fields.
+     * Final fields were set by the constructor and are left as they are.
+     */
+    private void injectFields(BeanGraph graph, Object object, boolean controller) throws IllegalAccessException {
+        for (Field field : object.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                continue;
+            }
 
-                    field.setAccessible(true);
-                    field.set(serviceObject, componentMap.get(field.getType().getName()));
-                }
+            Object value = repositoryFor(field.getType());
+            if (value == null && (field.isAnnotationPresent(Autowired.class) || controller && field.getType().isAnnotationPresent(Service.class))) {
+                value = beanMap.get(graph.beanFor(field.getType(), "Field: " + field.getName() + " of " + object.getClass().getName()));
+            }
+            if (value != null) {
+                field.setAccessible(true);
+                field.set(object, value);
             }
         }
+    }
 
-        /// injecting services into controller classes
-        for (String controllerName : controllerMap.keySet()){
-            Object controllerObject = controllerMap.get(controllerName);
+    private void insertRoutes(Class<?> cls, Object obj) {
+        String controllerPath = cls.getAnnotation(Controller.class).path();
 
-            for (Field field : controllerObject.getClass().getDeclaredFields()){
-                if (field.getType().isAnnotationPresent(Service.class)){
-                    field.setAccessible(true);
-                    field.set(controllerObject, serviceMap.get(field.getType().getName()));
+        for (Method method : cls.getDeclaredMethods()){
+            if (method.isAnnotationPresent(Get.class)){
+                if (method.getReturnType() != Response.class){
+                    throw new FrameworkException("Method with @Get annotation must return Response object. Method: " + method.getName() + " in class: " + cls.getName() + " does not return Response object");
                 }
+                ServerEngine.getInstance().insertRoute(framework.http.Method.GET, controllerPath + method.getAnnotation(Get.class).path(), method, obj);
+                continue;
+            }
+            if (method.isAnnotationPresent(Post.class)){
+                ServerEngine.getInstance().insertRoute(framework.http.Method.POST, controllerPath + method.getAnnotation(Post.class).path(), method, obj);
+                continue;
+            }
+            if (method.isAnnotationPresent(Put.class)){
+                ServerEngine.getInstance().insertRoute(framework.http.Method.PUT, controllerPath + method.getAnnotation(Put.class).path(), method, obj);
+                continue;
+            }
+            if (method.isAnnotationPresent(Delete.class)){
+                ServerEngine.getInstance().insertRoute(framework.http.Method.DELETE, controllerPath + method.getAnnotation(Delete.class).path(), method, obj);
+                continue;
             }
         }
     }
@@ -5,14 +5,27 @@ import framework.annotations.components.Controller;
 import framework.annotations.components.Repository;
 import framework.annotations.components.Service;
 import framework.annotations.databases.Entity;
+import framework.discovery.ClassScanner;
+import framework.discovery.ScanConfiguration;
 import framework.exceptions.FrameworkException;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
- * Scans directory which uses a framework.
+ * Scans class files of the configured roots (directories and jars) for the packages which use a framework,
+ * see ScanConfiguration. A root with a component index, written by the Precompiler, is read from its index instead.
  * Looks for classes with annotations defined
  * in the framework.annotation package,
  * sorts them by lists,
@@ -21,16 +34,17 @@ import java.util.List;
  */
 public class DiscoveryEngine {
     private static volatile DiscoveryEngine instance = null;
-    private static final String PACKAGE_LOCATION = "src/java/";
-    private static final String PACKAGE_NAME = "playground";
+    public static final String COMPONENT_INDEX = "META-INF/framework/components.idx";
 
+    private static ScanConfiguration configuration;        //packages, roots and class loader of the application
     private static List<Class<?>> entityClassesList;      //classes annotated with @Entity
     private static List<Class<?>> repositoryClassesList;  //classes annotated with @Repository
     private static List<Class<?>> serviceClassesList;     //classes annotated with @Service
     private static List<Class<?>> controllerClassesList;  //classes annotated with @Controller
     private static List<Class<?>> componentClassesList;   //classes annotated with @Component
 
-    private DiscoveryEngine() throws Exception {
+    private DiscoveryEngine(Class<?> mainClass) throws Exception {
+        configuration = ScanConfiguration.of(mainClass);
         entityClassesList = new ArrayList<>();
         repositoryClassesList = new ArrayList<>();
         serviceClassesList = new ArrayList<>();
@@ -38,67 +52,127 @@ public class DiscoveryEngine {
         componentClassesList = new ArrayList<>();
 
         initClasses();
+        initConverters();
         initDatabase();
         initDependency();
     }
 
-    public static void getInstance() throws Exception {
+    /**
+     * @param mainClass class whose main method started the framework.
+     */
+    public static void getInstance(Class<?> mainClass) throws Exception {
         if (instance == null) {
-            instance = new DiscoveryEngine();
+            instance = new DiscoveryEngine(mainClass);
         }
     }
 
     private static void initClasses() {
-        File directory = new File(PACKAGE_LOCATION + PACKAGE_NAME );
+        Set<String> components = new LinkedHashSet<>();
+        List<Path> unindexed = new ArrayList<>();
+        /// Every root built by the Precompiler has its own index, only roots without one are scanned
+        for (Path root : configuration.getRoots()) {
+            List<String> indexed = readIndex(root);
+            if (indexed == null) {
+                unindexed.add(root);
+            }
+            else {
+                components.addAll(indexed);
+            }
+        }
+        components.addAll(ClassScanner.scan(unindexed, configuration.getPackages()));
 
-        if (directory.exists()) {
-            scanDirectory(directory, PACKAGE_NAME);
-        } else {
-            throw new FrameworkException( "Package path not found: " + directory.getAbsolutePath());
+        if (components.isEmpty()) {
+            throw new FrameworkException("No components found in packages: " + configuration.getPackages() + " of roots: " + configuration.getRoots());
+        }
+        for (String className : components) {
+            sortClass(className);
         }
     }
 
-    private static void scanDirectory(File directory, String packageName) {
-        File[] files = directory.listFiles();
-        if (files == null)
-            return;
-
-        for (File file : files) {
-            if (file.isDirectory()) {
-                scanDirectory(file, packageName + "." + file.getName());
+    /**
+     * @param root directory of classes or a jar.
+     * @return classes of the root's component index in the configured packages, null if the root has no index.
+     */
+    private static List<String> readIndex(Path root) {
+        try {
+            if (Files.isDirectory(root)) {
+                Path index = root.resolve(COMPONENT_INDEX);
+                if (!Files.isRegularFile(index)) {
+                    return null;
+                }
+                try (InputStream in = Files.newInputStream(index)) {
+                    return readIndex(in);
+                }
             }
-            else if (file.getName().endsWith(".java")) {
-                String className = file.getName().substring(0, file.getName().length() - 5);
-
-                try {
-                    Class<?> clazz = Class.forName(packageName + "." + className);
-
-                    if (clazz.isAnnotationPresent(Entity.class)){
-                        entityClassesList.add(clazz);
-                        continue;
-                    }
-                    if (clazz.isAnnotationPresent(Repository.class)){
-                        repositoryClassesList.add(clazz);
-                        continue;
-                    }
-                    if (clazz.isAnnotationPresent(Service.class)){
-                        serviceClassesList.add(clazz);
-                        continue;
-                    }
-                    if (clazz.isAnnotationPresent(Controller.class)){
-                        controllerClassesList.add(clazz);
-                        continue;
+            if (Files.isRegularFile(root) && root.toString().endsWith(".jar")) {
+                try (ZipFile jar = new ZipFile(root.toFile())) {
+                    ZipEntry index = jar.getEntry(COMPONENT_INDEX);
+                    if (index == null) {
+                        return null;
                     }
-                    if (clazz.isAnnotationPresent(Component.class)){
-                        componentClassesList.add(clazz);
-                        continue;
+                    try (InputStream in = jar.getInputStream(index)) {
+                        return readIndex(in);
                     }
                 }
-                catch (ClassNotFoundException e) {
-                    throw new FrameworkException("Class not found: " + packageName + "." + className);
-                }
+            }
+            return null;
+        }
+        catch (IOException e) {
+            throw new FrameworkException("Failed to read component index: " + COMPONENT_INDEX + " of: " + root);
+        }
+    }
+
+    /**
+     * Reading a component index written by framework.build.Precompiler,
+     * it lists every class with a framework annotation in its root, so that root is not scanned at startup.
+     * @param index stream of the index resource.
+     * @return classes of the index in the configured packages.
+     */
+    private static List<String> readIndex(InputStream index) throws IOException {
+        List<String> components = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(index, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (configuration.isScanned(line)) {
+                components.add(line);
             }
         }
+        return components;
+    }
+
+    /// Classes are loaded but not initialized, that happens when the engines first use them
+    private static void sortClass(String className) {
+        try {
+            Class<?> clazz = Class.forName(className, false, configuration.getClassLoader());
+
+            if (clazz.isAnnotationPresent(Entity.class)){
+                entityClassesList.add(clazz);
+                return;
+            }
+            if (clazz.isAnnotationPresent(Repository.class)){
+                repositoryClassesList.add(clazz);
+                return;
+            }
+            if (clazz.isAnnotationPresent(Service.class)){
+                serviceClassesList.add(clazz);
+                return;
+            }
+            if (clazz.isAnnotationPresent(Controller.class)){
+                controllerClassesList.add(clazz);
+                return;
+            }
+            if (clazz.isAnnotationPresent(Component.class)){
+                componentClassesList.add(clazz);
+            }
+        }
+        catch (ClassNotFoundException e) {
+            throw new FrameworkException("Class not found: " + className);
+        }
+    }
+
+    private static void initConverters() throws Exception {
+        DependencyEngine.getInstance().createConverters(componentClassesList);
     }
 
     private static void initDatabase() {
@@ -107,9 +181,6 @@ public class DiscoveryEngine {
     }
 
     private static void initDependency() throws Exception {
-        DependencyEngine.getInstance().creteService(serviceClassesList);
-        DependencyEngine.getInstance().creteController(controllerClassesList);
-        DependencyEngine.getInstance().createComponents(componentClassesList);
-        DependencyEngine.getInstance().injectDependencies();
+        DependencyEngine.getInstance().createBeans(serviceClassesList, controllerClassesList, componentClassesList);
     }
 }
@@ -0,0 +1,70 @@
+package framework.engines;
+
+import framework.http.RequestParser;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * State of one connection owned by SelectorEngine:
+ * bytes of the request received so far and how far the parser got with them.
+ * Buffer is dropped while the connection is idle with nothing received.
+ */
+public class SelectorConnection {
+    private final SocketChannel channel;
+    private final int servedRequests;
+    private final RequestParser parser;
+    private ByteBuffer buffer;                  //null while nothing of the next request was received
+    private boolean continueSent;               //100 Continue was sent for the current request
+    private long lastActive;                    //when the connection was registered or last received bytes
+
+    protected SelectorConnection(SocketChannel channel, int servedRequests, ByteBuffer buffer, RequestParser parser) {
+        this.channel = channel;
+        this.servedRequests = servedRequests;
+        this.buffer = buffer != null && buffer.hasRemaining() ? buffer : null;
+        this.parser = parser;
+        this.lastActive = System.currentTimeMillis();
+    }
+
+    protected SocketChannel getChannel() {
+        return channel;
+    }
+
+    protected int getServedRequests() {
+        return servedRequests;
+    }
+
+    protected RequestParser getParser() {
+        return parser;
+    }
+
+    /**
+     * @return buffer of the connection, allocated when the first bytes of a request arrive.
+     */
+    protected ByteBuffer getBuffer() {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(ThreadEngine.INITIAL_BUFFER_SIZE).flip();
+        }
+        return buffer;
+    }
+
+    protected void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    protected boolean isContinueSent() {
+        return continueSent;
+    }
+
+    protected void setContinueSent(boolean continueSent) {
+        this.continueSent = continueSent;
+    }
+
+    protected long getLastActive() {
+        return lastActive;
+    }
+
+    protected void touch() {
+        lastActive = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,277 @@
+package framework.engines;
+
+import framework.exceptions.FrameworkException;
+import framework.http.RequestParser;
+import framework.http.responses.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking accept and read loop for ConnectionMode.SELECTOR.
+ * One thread owns the selector, reads whatever a socket has without blocking
+ * and feeds it to the connection's RequestParser, only a complete request
+ * (head and body) is handed to a worker from the bounded pool,
+ * so idle clients and clients sending slowly never hold a worker thread.
+ * Workers still write responses in blocking mode, a client reading slowly holds one while it is written.
+ * Keep-alive connections are parked back here between requests, a connection
+ * that does not complete its next request within the keep-alive timeout is closed.
+ * When the connection limit is reached, accepting is paused
+ * and new clients wait in the kernel backlog.
+ */
+public class SelectorEngine {
+    private static final long IDLE_SWEEP_INTERVAL = 1_000;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final SelectionKey acceptKey;
+    private final ExecutorService workers;
+    private final Semaphore connectionPermits;
+    private final AtomicBoolean acceptPaused;
+    private final Queue<SelectorConnection> parkedConnections;    //handed back by workers, registered by selector thread
+
+    protected SelectorEngine(int port, ExecutorService workers, Semaphore connectionPermits) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.workers = workers;
+        this.connectionPermits = connectionPermits;
+        this.acceptPaused = new AtomicBoolean(false);
+        this.parkedConnections = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Selector loop, never returns while the server is running.
+     */
+    protected void run() throws IOException {
+        List<SelectionKey> readyKeys = new ArrayList<>();
+        long lastSweep = System.currentTimeMillis();
+
+        while (true) {
+            selector.select(IDLE_SWEEP_INTERVAL);
+            resumeAcceptIfPossible();
+            registerParkedConnections();
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                }
+                else if (key.isReadable() && readRequest(key)) {
+                    key.cancel();
+                    readyKeys.add(key);
+                }
+            }
+
+            if (!readyKeys.isEmpty()) {
+                selector.selectNow();               //deregisters the cancelled keys
+                selector.selectedKeys().clear();    //selector is level triggered, anything skipped fires again
+                for (SelectionKey key : readyKeys) {
+                    dispatch((SocketChannel) key.channel(), (SelectorConnection) key.attachment());
+                }
+                readyKeys.clear();
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastSweep >= IDLE_SWEEP_INTERVAL) {
+                closeIdleConnections(now);
+                lastSweep = now;
+            }
+        }
+    }
+
+    /**
+     * Handing a keep-alive connection back to the selector,
+     * called by a worker when the buffer has no further complete request.
+     * @param channel connection's channel, still in blocking mode.
+     * @param servedRequests requests served on the connection so far.
+     * @param buffer bytes received of the next request, if any.
+     * @param parser parser that has started on those bytes.
+     */
+    protected void park(SocketChannel channel, int servedRequests, ByteBuffer buffer, RequestParser parser) {
+        parkedConnections.add(new SelectorConnection(channel, servedRequests, buffer, parser));
+        selector.wakeup();
+    }
+
+    /**
+     * Reading what the socket has, without blocking, and parsing it.
+     * @return true if the connection now has a complete request for a worker.
+     */
+    private boolean readRequest(SelectionKey key) {
+        SelectorConnection connection = (SelectorConnection) key.attachment();
+        SocketChannel channel = connection.getChannel();
+        RequestParser parser = connection.getParser();
+        try {
+            ByteBuffer buffer = connection.getBuffer();
+            while (!parser.parse(buffer)) {
+                if (!connection.isContinueSent() && ThreadEngine.needsContinue(parser)) {
+                    channel.write(ByteBuffer.wrap(ThreadEngine.CONTINUE));    //25 bytes into an empty socket buffer
+                    connection.setContinueSent(true);
+                }
+                buffer = ThreadEngine.makeRoom(buffer, parser);
+                connection.setBuffer(buffer);
+
+                int count = channel.read(ByteBuffer.wrap(buffer.array(), buffer.limit(), buffer.capacity() - buffer.limit()));
+                if (count < 0) {
+                    key.cancel();
+                    close(channel);
+                    return false;
+                }
+                if (count == 0) {
+                    return false;       //rest of the request has not arrived yet
+                }
+                buffer.limit(buffer.limit() + count);
+                connection.touch();     //a slow client still sending is not idle
+            }
+            connection.setContinueSent(false);
+            return true;
+        }
+        catch (IOException e) {
+            key.cancel();
+            close(channel);
+            return false;
+        }
+        catch (FrameworkException e) {
+            /// malformed or too large request, answered here as a worker would
+            key.cancel();
+            reject(channel, e);
+            return false;
+        }
+    }
+
+    private void accept() throws IOException {
+        while (connectionPermits.tryAcquire()) {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                connectionPermits.release();
+                return;
+            }
+            register(new SelectorConnection(channel, 0, null, new RequestParser()));
+        }
+
+        /// connection limit reached, stop accepting until one closes
+        acceptPaused.set(true);
+        acceptKey.interestOps(0);
+    }
+
+    private void registerParkedConnections() {
+        SelectorConnection connection;
+        while ((connection = parkedConnections.poll()) != null) {
+            try {
+                register(connection);
+            }
+            catch (IOException e) {
+                close(connection.getChannel());
+            }
+        }
+    }
+
+    private void register(SelectorConnection connection) throws IOException {
+        connection.touch();
+        connection.getChannel().configureBlocking(false);
+        connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * Handing a connection with a complete request to a worker thread.
+     * Socket is already deregistered, so the worker can write to it in blocking mode.
+     */
+    private void dispatch(SocketChannel channel, SelectorConnection connection) {
+        try {
+            channel.configureBlocking(true);
+            ThreadEngine threadEngine = new ThreadEngine(channel.socket(), this, connection);
+            workers.execute(() -> {
+                try {
+                    threadEngine.run();
+                }
+                finally {
+                    if (!threadEngine.isParked()) {
+                        connectionClosed();
+                    }
+                }
+            });
+        }
+        catch (IOException e) {
+            close(channel);
+        }
+        catch (FrameworkException e) {
+            connectionClosed();
+        }
+    }
+
+    private void closeIdleConnections(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof SelectorConnection connection) {
+                if (now - connection.getLastActive() >= ThreadEngine.KEEP_ALIVE_TIMEOUT) {
+                    key.cancel();
+                    close(connection.getChannel());
+                }
+            }
+        }
+    }
+
+    /**
+     * Best effort error response for a request that could not be parsed, then closing the connection.
+     */
+    private void reject(SocketChannel channel, FrameworkException e) {
+        try {
+            Response response = ThreadEngine.errorResponse(e);
+            response.getHeader().add("Connection", "close");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            response.write(bytes);
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+        catch (IOException ignored) {
+            /// client is already gone
+        }
+        close(channel);
+    }
+
+    private void close(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ignored) {
+        }
+        connectionClosed();
+    }
+
+    /**
+     * Called after a connection has been closed.
+     */
+    private void connectionClosed() {
+        connectionPermits.release();
+        if (acceptPaused.get()) {
+            selector.wakeup();
+        }
+    }
+
+    private void resumeAcceptIfPossible() {
+        if (acceptPaused.get() && connectionPermits.availablePermits() > 0) {
+            acceptPaused.set(false);
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+}
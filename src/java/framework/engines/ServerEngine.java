@@ -1,35 +1,56 @@
 package framework.engines;
 
+import framework.database.PageRequest;
+import framework.exceptions.BadRequestException;
+import framework.exceptions.ConflictException;
 import framework.exceptions.FrameworkException;
-import framework.http.responses.ErrorResponse;
+import framework.database.EntityMetadata;
+import framework.http.EntityBinder;
 import framework.http.Request;
+import framework.http.routing.ArgumentBinder;
+import framework.logging.Log;
+import framework.http.routing.Route;
+import framework.http.routing.Router;
+import framework.http.responses.BadRequestResponse;
+import framework.http.responses.ConflictResponse;
+import framework.http.responses.MethodNotAllowedResponse;
+import framework.http.responses.NotFoundResponse;
 import framework.http.responses.Response;
-import framework.http.responses.SuccessfulResponse;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Starts the server on a given port and waits for incoming connections.
  * Holds all the methods and objects for the controllers,
- * mapped by the HTTP path.
+ * compiled into a route table by HTTP method and path.
  * Invokes the methods when a request is received.
  */
 public class ServerEngine {
     private static volatile ServerEngine instance = null;
     private static final int TCP_PORT = 9999;
+    private static final ConnectionMode CONNECTION_MODE = ConnectionMode.valueOf(System.getProperty("framework.server.mode", "SELECTOR").toUpperCase());
+    private static final int MAX_CONNECTIONS = Integer.getInteger("framework.server.maxConnections", 10_000);
+    private static final int WORKER_THREADS = Integer.getInteger("framework.server.workers", Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
 
-    private static Map<String, Object> controllerMap;   //path to controller's object
-    private static Map<String, Method> methodMap;       //path to controller's method
+    private static Router router;                       //HTTP method and path -> controller's method
 
     private ServerEngine() {
-        controllerMap = new HashMap<>();
-        methodMap = new HashMap<>();
+        router = new Router();
     }
 
     protected static ServerEngine getInstance() {
@@ -41,134 +62,241 @@ public class ServerEngine {
 
     /**
      * Starts the server and waits for incoming connections.
+     * At most MAX_CONNECTIONS are open at once, further clients
+     * wait in the accept backlog until a connection closes.
      */
     public static void run() {
-        try {
-            ServerSocket serverSocket = new ServerSocket(TCP_PORT);
-            System.out.println("Server is running at http://localhost:"+TCP_PORT);
+        Semaphore connectionPermits = new Semaphore(MAX_CONNECTIONS);
 
-            while(true){
-                Socket socket = serverSocket.accept();
-                new Thread(new ThreadEngine(socket)).start();
+        try {
+            if (CONNECTION_MODE == ConnectionMode.SELECTOR) {
+                SelectorEngine selectorEngine = new SelectorEngine(TCP_PORT, newWorkerPool(), connectionPermits);
+                Log.info("ServerEngine", "Server is running at http://localhost:{} ({}, {} workers)", TCP_PORT, CONNECTION_MODE, WORKER_THREADS);
+                selectorEngine.run();
             }
+            else {
+                ThreadFactory threadFactory = virtualThreadFactory();
+                ServerSocket serverSocket = new ServerSocket(TCP_PORT);
+                Log.info("ServerEngine", "Server is running at http://localhost:{} ({})", TCP_PORT, CONNECTION_MODE);
 
+                while(true){
+                    connectionPermits.acquireUninterruptibly();
+                    Socket socket = serverSocket.accept();
+                    try {
+                        ThreadEngine threadEngine = new ThreadEngine(socket);
+                        threadFactory.newThread(() -> {
+                            try {
+                                threadEngine.run();
+                            }
+                            finally {
+                                connectionPermits.release();
+                            }
+                        }).start();
+                    }
+                    catch (FrameworkException e) {
+                        connectionPermits.release();
+                    }
+                }
+            }
         } catch (IOException e) {
             throw new FrameworkException("Failed to create ServerSocket");
         }
     }
 
     /**
-     * Inserting method and object into maps
-     * @param path HTTP path as a key, example GET /employees/all
-     * @param method Method for a specific path
-     * @param controller Controller which has the method
+     * Bounded pool for ConnectionMode.SELECTOR,
+     * queue is as large as the connection limit so a ready connection is never rejected.
      */
-    protected void insertMethod(String path, Method method, Object controller){
-        if (controllerMap.containsKey(path)) {
-            throw new FrameworkException("Path: " + path + " already exists.");
-        }
+    private static ExecutorService newWorkerPool() {
+        return new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_CONNECTIONS));
+    }
 
-        controllerMap.put(path, controller);
-        methodMap.put(path, method);
+    /**
+     * Virtual threads for ConnectionMode.VIRTUAL, looked up reflectively
+     * so the framework still compiles and runs in SELECTOR mode on runtimes older than Java 21.
+     * Without them the mode would mean one unbounded platform thread per connection, so it is refused.
+     * @return factory of virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) builder.getClass().getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new FrameworkException("framework.server.mode=VIRTUAL needs virtual threads (Java 21+), this runtime is Java "
+                    + Runtime.version().feature() + ", use SELECTOR");
+        }
     }
 
     /**
-     * Return response for specified route
-     * @param request Request object received from the client.
-     * @return Response object based on the request method.
+     * Compiling a controller method into the route table.
+     * Parameters are checked here, so a wrong controller method fails at startup, not per request.
+     * @param httpMethod HTTP method of the route
+     * @param path HTTP path, example /employees/all or /employees/{id}
+     * @param method Method for a specific path
+     * @param controller Controller which has the method
      */
-    protected Response makeResponse(Request request) throws InvocationTargetException, IllegalAccessException, ClassNotFoundException, NoSuchMethodException, InstantiationException {
-        switch (request.getMethod()){
-            case GET -> {
-                if (request.getPath().contains("?")) {
-                    Long id = Long.parseLong(request.getPath().split("\\?")[1].split("=")[1]);
-                    request.setPath(request.getPath().split("\\?")[0]);
+    protected void insertRoute(framework.http.Method httpMethod, String path, Method method, Object controller){
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Type[] genericTypes = method.getGenericParameterTypes();
+        ArgumentBinder[] binders = new ArgumentBinder[parameterTypes.length];
+        String where = " Method: " + method.getName() + " in class: " + controller.getClass().getName();
 
-                    Method method = methodMap.get(request.getPath());
-                    if (method == null) {
-                        throw new FrameworkException("GET method not found for path: " + request.getPath());
-                    }
-                    if (method.getParameterTypes().length == 1){
-                        method.setAccessible(true);
-                        return (Response) method.invoke(controllerMap.get(request.getPath()), id);
-                    }
-                    else {
-                        throw new FrameworkException("GET method must have only one parameter");
-                    }
+        switch (httpMethod) {
+            case GET -> {
+                int ids = 0;
+                int pages = 0;
+                for (Class<?> type : parameterTypes) {
+                    ids += isId(type) ? 1 : 0;
+                    pages += type == PageRequest.class ? 1 : 0;
                 }
-                else {
-                    Method method = methodMap.get(request.getPath());
-                    if (method == null) {
-                        throw new FrameworkException("GET method not found for path: " + request.getPath());
-                    }
-                    if (method.getParameterTypes().length == 0) {
-                        method.setAccessible(true);
-                        return (Response) method.invoke(controllerMap.get(request.getPath()));
-                    }
-                    else {
-                        throw new FrameworkException("GET method must have no parameters");
-                    }
+                if (ids > 1 || pages > 1 || ids + pages != parameterTypes.length) {
+                    throw new FrameworkException("GET method can only have one Long id and one PageRequest parameter." + where);
                 }
             }
-
             case POST -> {
-                Method method = methodMap.get(request.getPath());
-                if (method == null) {
-                    throw new FrameworkException("POST method not found for path: " + request.getPath());
+                if (parameterTypes.length != 1 || (!DatabaseEngine.getInstance().isEntity(parameterTypes[0]) && entityListType(genericTypes[0]) == null)) {
+                    throw new FrameworkException("POST method must have only one parameter, an @Entity class or a List of them." + where);
                 }
-
-                method.setAccessible(true);
-                if (method.getParameterTypes().length == 1) {
-                    method.invoke(controllerMap.get(request.getPath()), DatabaseEngine.getInstance().createEntity(method.getParameterTypes()[0].getName(), request.getJsonBody(), null));
-                    return new SuccessfulResponse();
+            }
+            case PUT -> {
+                boolean single = parameterTypes.length == 2 && (isId(parameterTypes[0]) ^ isId(parameterTypes[1]));
+                boolean batch = parameterTypes.length == 1 && entityMapType(genericTypes[0]) != null;
+                if (!single && !batch) {
+                    throw new FrameworkException("PUT method must have only two parameter, Long id and an @Entity class, or one Map of ids to them." + where);
                 }
-                else {
-                    throw new FrameworkException("POST method must have only one parameter");
+            }
+            case DELETE -> {
+                if (parameterTypes.length != 1 || (!isId(parameterTypes[0]) && !isIdList(genericTypes[0]))) {
+                    throw new FrameworkException("DELETE method must have only one Long id parameter, or a List of ids." + where);
                 }
             }
+        }
 
-            case PUT -> {
-                Long id = Long.parseLong(request.getPath().split("\\?")[1].split("=")[1]);
-
-                request.setPath(request.getPath().split("\\?")[0]);
-                Method method = methodMap.get(request.getPath());
-                if (method == null) {
-                    throw new FrameworkException("PUT method not found for path: " + request.getPath());
-                }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            Class<?> listEntity = entityListType(genericTypes[i]);
+            Class<?> mapEntity = entityMapType(genericTypes[i]);
+            if (listEntity != null) {
+                EntityMetadata metadata = DatabaseEngine.getInstance().getMetadata(listEntity);
+                binders[i] = request -> EntityBinder.bindEntityList(request, metadata);
+            }
+            else if (mapEntity != null) {
+                EntityMetadata metadata = DatabaseEngine.getInstance().getMetadata(mapEntity);
+                binders[i] = request -> EntityBinder.bindEntityMap(request, metadata);
+            }
+            else if (isIdList(genericTypes[i])) {
+                binders[i] = EntityBinder::bindIdList;
+            }
+            else if (isId(type)) {
+                binders[i] = this::resolveId;
+            }
+            else if (type == PageRequest.class) {
+                binders[i] = PageRequest::from;
+            }
+            else if (!DatabaseEngine.getInstance().isEntity(type)) {
+                throw new FrameworkException("Parameter of type: " + type.getName() + " is not an id nor an @Entity class." + where);
+            }
+            else if (httpMethod == framework.http.Method.PUT) {
+                EntityMetadata metadata = DatabaseEngine.getInstance().getMetadata(type);
+                binders[i] = request -> EntityBinder.bindEntity(request, metadata, resolveId(request));
+            }
+            else {
+                EntityMetadata metadata = DatabaseEngine.getInstance().getMetadata(type);
+                binders[i] = request -> EntityBinder.bindEntity(request, metadata, null);
+            }
+        }
 
-                method.setAccessible(true);
-                if (method.getParameterTypes().length == 2){
-                    if (method.getParameterTypes()[0] == Long.class){
-                        method.invoke(controllerMap.get(request.getPath()), id, DatabaseEngine.getInstance().createEntity(method.getParameterTypes()[1].getName(), request.getJsonBody(), id));
-                    }
-                    else {
-                        method.invoke(controllerMap.get(request.getPath()), DatabaseEngine.getInstance().createEntity(method.getParameterTypes()[1].getName(), request.getJsonBody(), id), id);
-                    }
+        router.add(httpMethod, path, controller, method, binders);
+    }
 
-                    return new SuccessfulResponse();
-                }
-                else {
-                    throw new FrameworkException("PUT method must have only two parameter");
-                }
+    /**
+     * Return response for specified route
+     * Update with a stale @Version is answered with 409 Conflict and a request whose parameters
+     * can not be bound with 400 Bad Request, the connection stays open.
+     * Unknown path is answered with 404 Not Found, a path without a route for the method with 405 Method Not Allowed.
+     * @param request Request object received from the client.
+     * @return Response object based on the request method.
+     */
+    protected Response makeResponse(Request request) throws InvocationTargetException {
+        Route route = router.match(request.getMethod(), request.getPath(), request.getParameters());
+        if (route == null) {
+            Set<framework.http.Method> allowed = router.allowedMethods(request.getPath());
+            if (allowed.isEmpty()) {
+                return new NotFoundResponse("Path not found: " + request.getPath());
             }
+            return new MethodNotAllowedResponse(request.getMethod() + " method not allowed for path: " + request.getPath(), allowed);
+        }
 
-            case DELETE -> {
-                Long id = Long.parseLong(request.getPath().split("\\?")[1].split("=")[1]);
+        try {
+            return route.invoke(request);
+        }
+        catch (ConflictException e) {
+            return new ConflictResponse(e.getMessage());
+        }
+        catch (BadRequestException e) {
+            return new BadRequestResponse(e.getMessage());
+        }
+    }
 
-                request.setPath(request.getPath().split("\\?")[0]);
-                Method method = methodMap.get(request.getPath());
-                if (method == null) {
-                    throw new FrameworkException("DELETE method not found for path: " + request.getPath());
-                }
+    private static boolean isId(Class<?> type) {
+        return type == Long.class || type == long.class;
+    }
 
-                method.setAccessible(true);
-                if (method.getParameterTypes().length == 1) {
-                    method.invoke(controllerMap.get(request.getPath()), id);
-                    return new SuccessfulResponse();
-                }
-            }
+    /**
+     * @param type generic type of a parameter.
+     * @return entity class E if the type is List of E, null otherwise.
+     */
+    private static Class<?> entityListType(Type type) {
+        Type[] arguments = typeArguments(type, List.class, 1);
+        if (arguments != null && arguments[0] instanceof Class<?> entity && DatabaseEngine.getInstance().isEntity(entity)) {
+            return entity;
+        }
+        return null;
+    }
+
+    /**
+     * @param type generic type of a parameter.
+     * @return entity class E if the type is Map of Long to E, null otherwise.
+     */
+    private static Class<?> entityMapType(Type type) {
+        Type[] arguments = typeArguments(type, Map.class, 2);
+        if (arguments != null && arguments[0] == Long.class && arguments[1] instanceof Class<?> entity && DatabaseEngine.getInstance().isEntity(entity)) {
+            return entity;
+        }
+        return null;
+    }
+
+    private static boolean isIdList(Type type) {
+        Type[] arguments = typeArguments(type, List.class, 1);
+        return arguments != null && arguments[0] == Long.class;
+    }
+
+    private static Type[] typeArguments(Type type, Class<?> raw, int count) {
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() == raw
+                && parameterized.getActualTypeArguments().length == count) {
+            return parameterized.getActualTypeArguments();
+        }
+        return null;
+    }
+
+    /**
+     * Id of the entity a request works with,
+     * taken from {id} path variable or id query parameter,
+     * or from the only parameter the request has, with several of them none is guessed.
+     * @param request Request object received from the client.
+     * @return id from the request.
+     * @throws BadRequestException if there is no id parameter and not exactly one other parameter.
+     */
+    private Long resolveId(Request request) {
+        String id = request.getParameter("id");
+        if (id == null && request.getParameters().size() == 1) {
+            id = request.getParameters().values().iterator().next();
+        }
+        if (id == null) {
+            throw new BadRequestException(request.getMethod() + " " + request.getPath() + " needs an id parameter");
         }
 
-        return new ErrorResponse();
+        return EntityBinder.parseId(id);
     }
 }
@@ -1,119 +1,280 @@
 package framework.engines;
 
-import com.google.gson.Gson;
+import framework.exceptions.BadRequestException;
 import framework.exceptions.FrameworkException;
+import framework.exceptions.PayloadTooLargeException;
+import framework.exceptions.ResponseAbortedException;
 import framework.http.*;
+import framework.http.responses.BadRequestResponse;
 import framework.http.responses.ErrorResponse;
+import framework.http.responses.PayloadTooLargeResponse;
+import framework.http.responses.Response;
+import framework.logging.Log;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
 
 /**
- * Accepts a request from a client and processes it.
- * Sends a response to the client.
+ * Accepts requests from a client and processes them.
+ * Sends a response to the client for every request, in order.
+ * Connection stays open while the client wants it (HTTP keep-alive),
+ * until it is idle for KEEP_ALIVE_TIMEOUT or has served MAX_REQUESTS_PER_CONNECTION.
+ * In SELECTOR mode the selector has already received and parsed the first request,
+ * this thread never waits for the client: it serves the complete requests in the buffer
+ * and hands the connection back with whatever part of the next one has arrived.
  */
 public class ThreadEngine implements Runnable {
+    protected static final int KEEP_ALIVE_TIMEOUT = Integer.getInteger("framework.server.keepAliveTimeout", 5_000);
+    private static final int MAX_REQUESTS_PER_CONNECTION = Integer.getInteger("framework.server.maxRequestsPerConnection", 1_000);
+    protected static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    protected static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
     private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
+    private InputStream in;
+    private OutputStream out;
+    private ByteBuffer buffer;                  //bytes received on this connection, reused for every request
+    private RequestParser parser;
+    private SelectorEngine selectorEngine;      //owner of the connection in SELECTOR mode, null otherwise
+    private int servedRequests;                 //requests served on this connection so far
+    private boolean parked;                     //connection was handed back to the selector
+    private boolean requestParsed;              //parser holds a complete request that was not served yet
 
     protected ThreadEngine(Socket socket) {
+        this(socket, null, 0, ByteBuffer.allocate(INITIAL_BUFFER_SIZE).flip(), new RequestParser(), false);
+    }
+
+    /**
+     * Serving a connection whose next request the selector has received and parsed.
+     * @param socket of the connection, in blocking mode.
+     * @param selectorEngine selector the connection is handed back to.
+     * @param connection buffer and parser holding the complete request.
+     */
+    protected ThreadEngine(Socket socket, SelectorEngine selectorEngine, SelectorConnection connection) {
+        this(socket, selectorEngine, connection.getServedRequests(), connection.getBuffer(), connection.getParser(), true);
+    }
+
+    private ThreadEngine(Socket socket, SelectorEngine selectorEngine, int servedRequests, ByteBuffer buffer, RequestParser parser, boolean requestParsed) {
         this.socket = socket;
+        this.selectorEngine = selectorEngine;
+        this.servedRequests = servedRequests;
+        this.buffer = buffer;
+        this.parser = parser;
+        this.requestParsed = requestParsed;
 
         try {
-            in = new BufferedReader(
-                    new InputStreamReader(
-                            socket.getInputStream()));
+            socket.setSoTimeout(KEEP_ALIVE_TIMEOUT);
 
-            out = new PrintWriter(
-                    new BufferedWriter(
-                            new OutputStreamWriter(
-                                    socket.getOutputStream())), true);
+            in = socket.getInputStream();
+            out = new BufferedOutputStream(
+                    socket.getOutputStream());
         }
         catch (IOException e) {
             closeSocket();
-            throw new FrameworkException("Failed to create BufferedReader/PrintWriter");
+            throw new FrameworkException("Failed to create InputStream/OutputStream");
         }
     }
 
     @Override
     public void run() {
         try {
-            Request request = generateRequest();
-            if (request == null) {
-                return;
-            }
+            while (true) {
+                Request request = generateRequest();
+                if (request == null) {
+                    return;
+                }
+                servedRequests++;
+
+                Response response = ServerEngine.getInstance().makeResponse(request);
+                boolean keepAlive = request.isKeepAlive() && servedRequests < MAX_REQUESTS_PER_CONNECTION;
+                response.getHeader().add("Connection", keepAlive ? "keep-alive" : "close");
+                response.write(out);
+                out.flush();
+
+                if (!keepAlive) {
+                    return;
+                }
 
-            out.println(ServerEngine.getInstance().makeResponse(request).render());
+                /// next request is not complete yet, selector waits for the rest of it instead of this thread
+                if (selectorEngine != null) {
+                    parser.reset();
+                    if (!parser.parse(buffer)) {
+                        parked = true;
+                        selectorEngine.park(socket.getChannel(), servedRequests, buffer, parser);
+                        return;
+                    }
+                    requestParsed = true;
+                }
+            }
+        }
+        catch (SocketTimeoutException e) {
+            /// idle keep-alive connection, just close it
+        }
+        catch (ResponseAbortedException e) {
+            Log.error("ThreadEngine", e.getMessage());
+            abort();
         }
         catch (Exception e) {
-            out.println(new ErrorResponse().render());
-            throw new RuntimeException(e);
+            /// thread belongs to a pool in SELECTOR mode, a failed request must not kill it
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            Log.error("ThreadEngine", "Request failed, closing the connection: {}", cause);
+            writeError(e);
         }
         finally {
-            closeSocket();
+            if (!parked) {
+                closeSocket();
+            }
         }
     }
 
+    protected boolean isParked() {
+        return parked;
+    }
+
     /**
      * Generates a request object from the input stream.
+     * Reads only as much as the parser needs, bytes of a pipelined
+     * next request stay in the buffer for the next call.
      * @return Request object or null if the input stream is empty.
      */
     private Request generateRequest() throws IOException {
-        String line = in.readLine();
-        if (line == null) {
+        if (requestParsed) {
+            requestParsed = false;
+        }
+        else if (!readRequest()) {
             return null;
         }
 
-        String[] actionRow = line.split(" ");
-        Method method = Method.valueOf(actionRow[0]);
-        String route = method + " " + actionRow[1];
-        Header headers = new Header();
-        HashMap<String, String> jsonBody = new HashMap<>();
-
-        /// Reading headers from a request
-        do {
-            line = in.readLine();
-            String[] headerRow = line.split(": ");
-            if (headerRow.length == 2) {
-                headers.add(headerRow[0].toLowerCase(), headerRow[1]);
-            }
-        } while (!line.trim().isEmpty());
-
-        if (method.equals(Method.POST) || method.equals(Method.PUT)) {
-            int contentLength = Integer.parseInt(headers.get("content-length"));
-            char[] buff = new char[contentLength];
-            in.read(buff, 0, contentLength);
-            String body = new String(buff);
+        Method method = parser.getMethod();
+        Header headers = new Header(parser);
+        ByteBuffer body = null;
 
+        if (method.equals(Method.POST) || method.equals(Method.PUT) || (method.equals(Method.DELETE) && parser.getContentLength() > 0)) {
             String contentType = headers.get("content-type");
 
-            /// request with JSON body
+            /// request with JSON body, an object or an array for batch requests, read when parameters are bound
             if (contentType != null && contentType.contains("application/json")) {
-                Gson gson = new Gson();
-                HashMap<String, Object> jsonMap = gson.fromJson(body, HashMap.class);   //Parse the JSON string into a HashMap
-                for (Map.Entry<String, Object> entry : jsonMap.entrySet()) {
-                    jsonBody.put(entry.getKey(), entry.getValue().toString());
-                }
+                body = parser.getBodyBuffer();
             }
             else {
                 throw new FrameworkException("Unsupported content type: " + contentType);
             }
         }
 
-        return new Request(method, route, headers, jsonBody);
+        return new Request(method, parser.getPath(), parser.getQuery(), parser.getVersion(), headers, body);
+    }
+
+    /**
+     * Reading from the socket until the parser has a complete request, in VIRTUAL mode.
+     * @return false if the client closed the connection.
+     */
+    private boolean readRequest() throws IOException {
+        parser.reset();
+        boolean continueSent = false;
+        while (!parser.parse(buffer)) {
+            if (!continueSent && needsContinue(parser)) {
+                /// client waits for this before sending a large body
+                out.write(CONTINUE);
+                out.flush();
+                continueSent = true;
+            }
+            buffer = makeRoom(buffer, parser);
+            int count = in.read(buffer.array(), buffer.limit(), buffer.capacity() - buffer.limit());
+            if (count < 0) {
+                return false;
+            }
+            buffer.limit(buffer.limit() + count);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the parsed head asks for 100 Continue before the body is sent.
+     */
+    protected static boolean needsContinue(RequestParser parser) {
+        return parser.getRequiredCapacity() > 0 && "100-continue".equalsIgnoreCase(parser.getHeader("expect"));
+    }
+
+    /**
+     * Making room behind the bytes in the buffer, it is compacted or grown when it is full.
+     * @param buffer bytes received so far, from position to limit.
+     * @param parser parsing the request at the buffer's position.
+     * @return buffer with free space after its limit, may be a new one.
+     */
+    protected static ByteBuffer makeRoom(ByteBuffer buffer, RequestParser parser) {
+        if (buffer.limit() < buffer.capacity()) {
+            return buffer;
+        }
+        int required = Math.max(parser.getRequiredCapacity(), buffer.remaining() + 1);
+        if (required > RequestParser.MAX_REQUEST_SIZE) {
+            throw new PayloadTooLargeException("Request is larger than " + RequestParser.MAX_REQUEST_SIZE + " bytes");
+        }
+        if (required > buffer.capacity() || buffer.position() == 0) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+            larger.put(buffer).flip();
+            return larger;
+        }
+        return buffer.compact().flip();
+    }
+
+    /**
+     * Response for a request that failed before a controller answered it.
+     * @param e what failed.
+     * @return 400 or 413 for a request the client got wrong, 500 otherwise.
+     */
+    protected static Response errorResponse(Exception e) {
+        if (e instanceof PayloadTooLargeException) {
+            return new PayloadTooLargeResponse(e.getMessage());
+        }
+        if (e instanceof BadRequestException) {
+            return new BadRequestResponse(e.getMessage());
+        }
+        return new ErrorResponse();
+    }
+
+    private void writeError(Exception e) {
+        try {
+            Response response = errorResponse(e);
+            response.getHeader().add("Connection", "close");
+            response.write(out);
+            out.flush();
+        }
+        catch (IOException ignored) {
+            /// client is already gone
+        }
+    }
+
+    /**
+     * Dropping the connection with a reset, what is still buffered of the response is not sent,
+     * so the client never gets the terminating chunk and knows the response is incomplete.
+     */
+    private void abort() {
+        try {
+            socket.setSoLinger(true, 0);
+            socket.close();
+        }
+        catch (IOException ignored) {
+            /// socket is already closed
+        }
+        in = null;
+        out = null;
     }
 
     private void closeSocket(){
         try {
-            in.close();
-            out.close();
+            if (in != null) {
+                in.close();
+            }
+            if (out != null) {
+                out.close();
+            }
             socket.close();
         }
         catch (IOException e) {
-            throw new FrameworkException("Failed to close socket");
+            Log.warn("ThreadEngine", "Failed to close socket: {}", e.getMessage());
         }
     }
 }
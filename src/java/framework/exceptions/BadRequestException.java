@@ -0,0 +1,11 @@
+package framework.exceptions;
+
+/**
+ * Request is malformed or can not be mapped to a route, answered with 400 Bad Request.
+ */
+public class BadRequestException extends FrameworkException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
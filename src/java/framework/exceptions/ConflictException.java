@@ -0,0 +1,11 @@
+package framework.exceptions;
+
+/**
+ * Update lost a race, the row was changed since the caller read it.
+ */
+public class ConflictException extends FrameworkException {
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
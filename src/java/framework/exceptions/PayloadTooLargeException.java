@@ -0,0 +1,11 @@
+package framework.exceptions;
+
+/**
+ * Request announces or sends more bytes than the server takes, answered with 413 Content Too Large.
+ */
+public class PayloadTooLargeException extends FrameworkException {
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package framework.exceptions;
+
+/**
+ * Response failed after its head was sent, the connection can only be dropped.
+ */
+public class ResponseAbortedException extends FrameworkException {
+
+    public ResponseAbortedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,174 @@
+package framework.http;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import framework.database.EntityField;
+import framework.database.EntityMetadata;
+import framework.exceptions.BadRequestException;
+import framework.exceptions.FrameworkException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads entities straight from the bytes of a request body, in one pass.
+ * Every member is matched to its field by name and read as the field's type,
+ * so no tree, map or text copy of the body is built on the way.
+ * Object must have as many members as the entity has fields, one of them may be unknown (like "id"),
+ * @Version field may be left out, unknown members are skipped
+ * and fields missing from the object keep their initial value.
+ */
+public class EntityBinder {
+
+    private EntityBinder() {
+    }
+
+    /**
+     * Binding a JSON object body to one entity.
+     * @param request with JSON body.
+     * @param metadata of the entity class.
+     * @param id primary key to set, null to leave it unset.
+     * @return new entity object.
+     */
+    public static Object bindEntity(Request request, EntityMetadata metadata, Long id) {
+        try (JsonReader in = open(request)) {
+            Object entity = readEntity(in, metadata, id);
+            end(in);
+            return entity;
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw failure(request, e);
+        }
+    }
+
+    /**
+     * Binding a JSON array of objects, body of a batch insert.
+     * @param request with JSON body.
+     * @param metadata of the entity class.
+     * @return new entity objects, in the order of the array.
+     */
+    public static List<Object> bindEntityList(Request request, EntityMetadata metadata) {
+        try (JsonReader in = open(request)) {
+            List<Object> entities = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                entities.add(readEntity(in, metadata, null));
+            }
+            in.endArray();
+            end(in);
+            return entities;
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw failure(request, e);
+        }
+    }
+
+    /**
+     * Binding a JSON object of id -> object, body of a batch update.
+     * @param request with JSON body.
+     * @param metadata of the entity class.
+     * @return id -> new entity object, in the order of the body.
+     */
+    public static Map<Long, Object> bindEntityMap(Request request, EntityMetadata metadata) {
+        try (JsonReader in = open(request)) {
+            Map<Long, Object> entities = new LinkedHashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                Long id = parseId(in.nextName());
+                entities.put(id, readEntity(in, metadata, id));
+            }
+            in.endObject();
+            end(in);
+            return entities;
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw failure(request, e);
+        }
+    }
+
+    /**
+     * Binding a JSON array of ids, body of a batch delete.
+     * @param request with JSON body.
+     * @return ids in the order of the array.
+     */
+    public static List<Long> bindIdList(Request request) {
+        try (JsonReader in = open(request)) {
+            List<Long> ids = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                ids.add(parseId(in.nextString()));
+            }
+            in.endArray();
+            end(in);
+            return ids;
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw failure(request, e);
+        }
+    }
+
+    /**
+     * @param id text of an id.
+     * @return id as a number.
+     * @throws BadRequestException if the text is not a number.
+     */
+    public static Long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        }
+        catch (NumberFormatException e) {
+            throw new BadRequestException("Id: " + id + " is not a number");
+        }
+    }
+
+    private static Object readEntity(JsonReader in, EntityMetadata metadata, Long id) throws IOException {
+        Object entity = metadata.newInstance();
+        int members = 0;
+        int matched = 0;
+        int expected = metadata.getFields().size();
+        EntityField versionField = metadata.getVersionField();
+        boolean versioned = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            EntityField field = metadata.getField(in.nextName());
+            members++;
+            if (field == null) {
+                in.skipValue();
+                continue;
+            }
+            field.readInto(in, entity);
+            matched++;
+            versioned |= field == versionField;
+        }
+        in.endObject();
+
+        if (versionField != null && !versioned) {
+            expected--;
+        }
+        if (members != expected || members - matched > 1) {
+            throw new BadRequestException("JSON object does not match with given class: " + metadata.getEntityClass().getName());
+        }
+        if (id != null) {
+            metadata.setId(entity, id);
+        }
+        return entity;
+    }
+
+    private static JsonReader open(Request request) {
+        if (!request.hasBody()) {
+            throw new BadRequestException(request.getMethod() + " " + request.getPath() + " needs a JSON body");
+        }
+        return new JsonReader(request.getBodyReader());
+    }
+
+    private static void end(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.END_DOCUMENT) {
+            throw new BadRequestException("JSON body has more than one value");
+        }
+    }
+
+    private static BadRequestException failure(Request request, Exception e) {
+        return new BadRequestException("Invalid JSON body for " + request.getMethod() + " " + request.getPath() + ": " + e.getMessage());
+    }
+}
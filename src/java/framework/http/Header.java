@@ -5,10 +5,13 @@ import java.util.Set;
 
 /**
  * Class represent one header element.
+ * Headers of a received request stay in the parser's buffer
+ * and are turned into Strings only when they are asked for.
  */
 public class Header {
 
     protected HashMap<String, String> headers;
+    private RequestParser source;       //parsed request, null for response headers
 
     /**
      * Construct a header with given parameters.
@@ -17,6 +20,16 @@ public class Header {
         this.headers = new HashMap<>();
     }
 
+    /**
+     * Construct a header backed by a parsed request.
+     *
+     * @param source parser holding the request, valid until it parses the next request
+     */
+    public Header(RequestParser source) {
+        this();
+        this.source = source;
+    }
+
     /**
      * Add a header pair.
      *
@@ -34,7 +47,11 @@ public class Header {
      * @return Value of the header
      */
     public String get(String name) {
-        return this.headers.get(name);
+        String value = this.headers.get(name);
+        if (value == null && source != null) {
+            value = source.getHeader(name);
+        }
+        return value;
     }
 
     /**
@@ -43,11 +60,22 @@ public class Header {
      * @return Set of header's keys
      */
     public Set<String> getKeys() {
+        materialize();
         return this.headers.keySet();
     }
 
     @Override
     public String toString() {
+        materialize();
         return this.headers.toString();
     }
+
+    private void materialize() {
+        if (source != null) {
+            for (int i = 0; i < source.getHeaderCount(); i++) {
+                this.headers.putIfAbsent(source.getHeaderName(i), source.getHeaderValue(i));
+            }
+            source = null;
+        }
+    }
 }
\ No newline at end of file
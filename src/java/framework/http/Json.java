@@ -0,0 +1,37 @@
+package framework.http;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import framework.conversion.ConverterAdapterFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the one Gson instance used by the framework.
+ * Gson is thread-safe and caches its type adapters,
+ * so creating it per request only throws that cache away.
+ * Types with a registered TypeConverter are written and read through it.
+ */
+public class Json {
+    public static final Gson GSON = new GsonBuilder().registerTypeAdapterFactory(new ConverterAdapterFactory()).create();
+
+    private Json() {
+    }
+
+    /**
+     * Flattening a JSON object into field name -> value as text, the form entities are created from.
+     * @param object JSON object of one entity.
+     * @return map of the object's members, nested values stay JSON text.
+     */
+    public static HashMap<String, String> toStringMap(JsonObject object) {
+        HashMap<String, String> map = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            JsonElement value = entry.getValue();
+            map.put(entry.getKey(), value.isJsonPrimitive() ? value.getAsString() : value.toString());
+        }
+        return map;
+    }
+}
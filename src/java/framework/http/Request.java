@@ -1,18 +1,42 @@
 package framework.http;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * One HTTP request.
+ * JSON body is kept as the received bytes, entity parameters are read from them
+ * by EntityBinder, the tree and map forms are only built if someone asks for them.
+ * Body is a view of the connection's buffer, valid while the request is being served.
+ */
 public class Request {
     private Method method;
     private String path;
+    private String query;
+    private String version;
     private Header headers;
-    private HashMap<String, String> jsonBody;
+    private ByteBuffer body;                        //JSON body bytes, null if the request has none
+    private HashMap<String, String> jsonBody;       //body object as field name -> text, built on first use
+    private JsonElement json;                       //body parsed as a tree, built on first use
+    private Map<String, String> parameters;         //path variables and query parameters, filled lazily
 
-    public Request(Method method, String path, Header headers, HashMap<String, String> jsonBody) {
+    public Request(Method method, String path, String query, String version, Header headers, ByteBuffer body) {
         this.method = method;
         this.path = path;
+        this.query = query;
+        this.version = version;
         this.headers = headers;
-        this.jsonBody = jsonBody;
+        this.body = body;
     }
 
     public Method getMethod() {
@@ -31,6 +55,83 @@ public class Request {
         this.path = path;
     }
 
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    /**
+     * Path variables of the matched route, filled by the router.
+     * @return mutable map of parameters, query parameters are parsed on first use.
+     */
+    public Map<String, String> getParameters() {
+        if (parameters == null) {
+            parameters = new LinkedHashMap<>();
+            parseQuery();
+        }
+        return parameters;
+    }
+
+    /**
+     * @param name of path variable or query parameter.
+     * @return value of the parameter, or null if the request does not have it.
+     */
+    public String getParameter(String name) {
+        return getParameters().get(name);
+    }
+
+    private void parseQuery() {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+
+        int start = 0;
+        while (start <= query.length()) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = query.length();
+            }
+            if (end > start) {
+                int equals = query.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    parameters.putIfAbsent(decode(query.substring(start, end)), "");
+                }
+                else {
+                    parameters.putIfAbsent(decode(query.substring(start, equals)), decode(query.substring(equals + 1, end)));
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private static String decode(String value) {
+        return value.indexOf('%') < 0 && value.indexOf('+') < 0 ? value : URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * HTTP/1.1 connections stay open unless the client asks to close them,
+     * HTTP/1.0 connections only if the client asks to keep them.
+     * @return true if the client wants to send more requests on the same connection.
+     */
+    public boolean isKeepAlive() {
+        String connection = headers.get("connection");
+        if ("HTTP/1.1".equals(version)) {
+            return connection == null || !connection.equalsIgnoreCase("close");
+        }
+        return connection != null && connection.equalsIgnoreCase("keep-alive");
+    }
+
     public Header getHeaders() {
         return headers;
     }
@@ -39,11 +140,46 @@ public class Request {
         this.headers = headers;
     }
 
+    /**
+     * @return true if the request has a JSON body.
+     */
+    public boolean hasBody() {
+        return body != null;
+    }
+
+    /**
+     * @return reader of the JSON body decoded as UTF-8, every call starts at the beginning.
+     */
+    public Reader getBodyReader() {
+        return new InputStreamReader(new ByteArrayInputStream(body.array(), body.arrayOffset() + body.position(), body.remaining()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return JSON object body as field name -> value as text, empty if the body is not an object.
+     */
     public HashMap<String, String> getJsonBody() {
+        if (jsonBody == null) {
+            JsonElement element = getJson();
+            jsonBody = element != null && element.isJsonObject() ? Json.toStringMap(element.getAsJsonObject()) : new HashMap<>();
+        }
         return jsonBody;
     }
 
     public void setJsonBody(HashMap<String, String> jsonBody) {
         this.jsonBody = jsonBody;
     }
+
+    /**
+     * @return parsed JSON body, or null if the request has none.
+     */
+    public JsonElement getJson() {
+        if (json == null && body != null) {
+            json = JsonParser.parseReader(getBodyReader());
+        }
+        return json;
+    }
+
+    public void setJson(JsonElement json) {
+        this.json = json;
+    }
 }
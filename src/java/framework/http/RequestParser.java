@@ -0,0 +1,345 @@
+package framework.http;
+
+import framework.exceptions.BadRequestException;
+import framework.exceptions.FrameworkException;
+import framework.exceptions.PayloadTooLargeException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental HTTP/1.x request parser working directly on bytes.
+ * Bytes are read into one ByteBuffer per connection, the parser
+ * remembers how far it got, so a request split over many reads
+ * is scanned only once.
+ * Request line and headers are kept as offsets into the buffer,
+ * a String is created only for the parts somebody asks for.
+ * All offsets are relative to the start of the request, so the
+ * buffer may be compacted while a request is still incomplete.
+ */
+public class RequestParser {
+    public static final int MAX_REQUEST_SIZE = Integer.getInteger("framework.server.maxRequestSize", 16 * 1024 * 1024);
+    private static final int MAX_HEADERS = 64;
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private static final byte[] GET = {'G', 'E', 'T'};
+    private static final byte[] POST = {'P', 'O', 'S', 'T'};
+    private static final byte[] PUT = {'P', 'U', 'T'};
+    private static final byte[] DELETE = {'D', 'E', 'L', 'E', 'T', 'E'};
+    private static final byte[] HTTP_1_1 = {'H', 'T', 'T', 'P', '/', '1', '.', '1'};
+    private static final byte[] CONTENT_LENGTH = {'c', 'o', 'n', 't', 'e', 'n', 't', '-', 'l', 'e', 'n', 'g', 't', 'h'};
+    private static final byte[] TRANSFER_ENCODING = {'t', 'r', 'a', 'n', 's', 'f', 'e', 'r', '-', 'e', 'n', 'c', 'o', 'd', 'i', 'n', 'g'};
+
+    private ByteBuffer buffer;
+    private int base;                   //absolute position of the request in the buffer
+
+    private int scan;                   //next byte to look at
+    private int lineStart;
+    private boolean requestLineDone;
+    private boolean headersDone;
+
+    private Method method;
+    private int pathStart;
+    private int pathEnd;
+    private int queryStart;             //-1 if there is no query
+    private int queryEnd;
+    private int versionStart;
+    private int versionEnd;
+
+    private int headerCount;
+    private final int[] nameStart = new int[MAX_HEADERS];
+    private final int[] nameEnd = new int[MAX_HEADERS];
+    private final int[] valueStart = new int[MAX_HEADERS];
+    private final int[] valueEnd = new int[MAX_HEADERS];
+
+    private int bodyStart;
+    private int contentLength;
+
+    public RequestParser() {
+        reset();
+    }
+
+    /**
+     * Preparing the parser for the next request on the same connection.
+     */
+    public void reset() {
+        scan = 0;
+        lineStart = 0;
+        requestLineDone = false;
+        headersDone = false;
+        method = null;
+        queryStart = -1;
+        queryEnd = -1;
+        headerCount = 0;
+        contentLength = 0;
+    }
+
+    /**
+     * Continuing to parse the request that starts at buffer's position.
+     * Position is moved past the request once it is complete.
+     * @param buffer bytes received so far, from position to limit.
+     * @return true if the whole request, with its body, is in the buffer.
+     */
+    public boolean parse(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.base = buffer.position();
+        int available = buffer.limit() - base;
+
+        while (!headersDone && scan < available) {
+            if (byteAt(scan++) != '\n') {
+                continue;
+            }
+
+            int lineEnd = scan - 1;
+            if (lineEnd > lineStart && byteAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+
+            if (!requestLineDone) {
+                parseRequestLine(lineStart, lineEnd);
+                requestLineDone = true;
+            }
+            else if (lineEnd == lineStart) {
+                headersDone = true;
+                bodyStart = scan;
+                contentLength = parseContentLength();
+            }
+            else {
+                parseHeader(lineStart, lineEnd);
+            }
+            lineStart = scan;
+        }
+
+        if (!headersDone) {
+            if (available > MAX_HEAD_SIZE) {
+                throw new FrameworkException("Request head is larger than " + MAX_HEAD_SIZE + " bytes");
+            }
+            return false;
+        }
+        if (available < bodyStart + contentLength) {
+            return false;
+        }
+
+        buffer.position(base + bodyStart + contentLength);
+        return true;
+    }
+
+    /**
+     * @return bytes the buffer must hold for the current request, 0 until headers are parsed.
+     */
+    public int getRequiredCapacity() {
+        return headersDone ? bodyStart + contentLength : 0;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return string(pathStart, pathEnd);
+    }
+
+    /**
+     * @return query without the leading ?, or null if the request has no query.
+     */
+    public String getQuery() {
+        return queryStart < 0 ? null : string(queryStart, queryEnd);
+    }
+
+    public String getVersion() {
+        return equalsIgnoreCase(versionStart, versionEnd, HTTP_1_1) ? "HTTP/1.1" : string(versionStart, versionEnd);
+    }
+
+    public int getHeaderCount() {
+        return headerCount;
+    }
+
+    public String getHeaderName(int index) {
+        return string(nameStart[index], nameEnd[index]).toLowerCase();
+    }
+
+    public String getHeaderValue(int index) {
+        return string(valueStart[index], valueEnd[index]);
+    }
+
+    /**
+     * Finding a header by name, without creating Strings for other headers.
+     * @param name lower case header name.
+     * @return value of the header, or null if it was not sent.
+     */
+    public String getHeader(String name) {
+        int index = findHeader(name.getBytes(StandardCharsets.US_ASCII));
+        return index < 0 ? null : getHeaderValue(index);
+    }
+
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Body of the request decoded as UTF-8, Content-Length counts bytes, not characters.
+     */
+    public String getBody() {
+        return new String(buffer.array(), buffer.arrayOffset() + base + bodyStart, contentLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Body of the request as bytes, without copying them.
+     * @return view of the buffer, valid until the parser is used for the next request.
+     */
+    public ByteBuffer getBodyBuffer() {
+        return ByteBuffer.wrap(buffer.array(), buffer.arrayOffset() + base + bodyStart, contentLength).slice();
+    }
+
+    private void parseRequestLine(int start, int end) {
+        int firstSpace = indexOf(' ', start, end);
+        int secondSpace = firstSpace < 0 ? -1 : indexOf(' ', firstSpace + 1, end);
+        if (firstSpace < 0) {
+            throw new FrameworkException("Malformed request line");
+        }
+
+        method = parseMethod(start, firstSpace);
+        pathStart = firstSpace + 1;
+        int targetEnd = secondSpace < 0 ? end : secondSpace;
+        int question = indexOf('?', pathStart, targetEnd);
+        if (question < 0) {
+            pathEnd = targetEnd;
+        }
+        else {
+            pathEnd = question;
+            queryStart = question + 1;
+            queryEnd = targetEnd;
+        }
+
+        if (secondSpace < 0) {
+            versionStart = end;
+            versionEnd = end;
+        }
+        else {
+            versionStart = secondSpace + 1;
+            versionEnd = end;
+        }
+    }
+
+    private Method parseMethod(int start, int end) {
+        if (equalsIgnoreCase(start, end, GET)) {
+            return Method.GET;
+        }
+        if (equalsIgnoreCase(start, end, POST)) {
+            return Method.POST;
+        }
+        if (equalsIgnoreCase(start, end, PUT)) {
+            return Method.PUT;
+        }
+        if (equalsIgnoreCase(start, end, DELETE)) {
+            return Method.DELETE;
+        }
+        throw new FrameworkException("Unsupported method: " + string(start, end));
+    }
+
+    private void parseHeader(int start, int end) {
+        if (headerCount == MAX_HEADERS) {
+            throw new FrameworkException("Request has more than " + MAX_HEADERS + " headers");
+        }
+
+        int colon = indexOf(':', start, end);
+        if (colon < 0) {
+            return;
+        }
+        int value = colon + 1;
+        while (value < end && byteAt(value) == ' ') {
+            value++;
+        }
+        int valueLast = end;
+        while (valueLast > value && byteAt(valueLast - 1) == ' ') {
+            valueLast--;
+        }
+
+        nameStart[headerCount] = start;
+        nameEnd[headerCount] = colon;
+        valueStart[headerCount] = value;
+        valueEnd[headerCount] = valueLast;
+        headerCount++;
+    }
+
+    /**
+     * Only Content-Length frames a body. Chunked bodies are not decoded, so a request with Transfer-Encoding
+     * is refused: read as a body of length 0, its chunks would be taken for the next request on the connection.
+     * @return length of the body, checked against MAX_REQUEST_SIZE digit by digit, so a huge value can not overflow.
+     * @throws BadRequestException if the value is not a number, or the request has Transfer-Encoding.
+     * @throws PayloadTooLargeException if head and body would be larger than MAX_REQUEST_SIZE.
+     */
+    private int parseContentLength() {
+        int index = findHeader(CONTENT_LENGTH);
+        if (findHeader(TRANSFER_ENCODING) >= 0) {
+            throw new BadRequestException(index >= 0 ? "Request has both Transfer-Encoding and Content-Length"
+                    : "Transfer-Encoding is not supported, send the body with Content-Length");
+        }
+        if (index < 0) {
+            return 0;
+        }
+        if (valueStart[index] == valueEnd[index]) {
+            throw new BadRequestException("Invalid Content-Length");
+        }
+
+        int maxLength = MAX_REQUEST_SIZE - bodyStart;
+        int length = 0;
+        for (int i = valueStart[index]; i < valueEnd[index]; i++) {
+            byte digit = byteAt(i);
+            if (digit < '0' || digit > '9') {
+                throw new BadRequestException("Invalid Content-Length");
+            }
+            if (length > (maxLength - (digit - '0')) / 10) {
+                throw new PayloadTooLargeException("Request is larger than " + MAX_REQUEST_SIZE + " bytes");
+            }
+            length = length * 10 + (digit - '0');
+        }
+        return length;
+    }
+
+    private int findHeader(byte[] name) {
+        for (int i = 0; i < headerCount; i++) {
+            if (equalsIgnoreCase(nameStart[i], nameEnd[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean equalsIgnoreCase(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            byte actual = byteAt(start + i);
+            if (actual >= 'A' && actual <= 'Z') {
+                actual += 'a' - 'A';
+            }
+            byte wanted = expected[i];
+            if (wanted >= 'A' && wanted <= 'Z') {
+                wanted += 'a' - 'A';
+            }
+            if (actual != wanted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (byteAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte byteAt(int offset) {
+        return buffer.get(base + offset);
+    }
+
+    private String string(int start, int end) {
+        return new String(buffer.array(), buffer.arrayOffset() + base + start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,27 @@
+package framework.http.responses;
+
+import framework.http.Json;
+
+import java.util.Map;
+
+/**
+ * 400 Bad Request, sent when a request is malformed.
+ */
+public class BadRequestResponse extends Response {
+    private final String message;
+
+    public BadRequestResponse(String message) {
+        this.message = message;
+        this.headers.add("Content-Type", "application/json");
+    }
+
+    @Override
+    protected String getStatus() {
+        return "400 Bad Request";
+    }
+
+    @Override
+    protected String getBody() {
+        return Json.GSON.toJson(Map.of("error", message));
+    }
+}
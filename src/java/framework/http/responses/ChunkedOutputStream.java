@@ -0,0 +1,71 @@
+package framework.http.responses;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a response body with chunked transfer encoding.
+ * Body is sent in chunks of at most CHUNK_SIZE bytes as it is produced,
+ * so a body of unknown length never has to be held in memory.
+ * Closing writes the last chunk but leaves the socket's stream open.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+
+    public ChunkedOutputStream(OutputStream out) {
+        this.out = out;
+        this.buffer = new byte[CHUNK_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            int copied = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, copied);
+            count += copied;
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeChunk();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeChunk();
+        out.write(LAST_CHUNK);
+    }
+
+    private void writeChunk() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        out.write(Integer.toHexString(count).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(buffer, 0, count);
+        out.write(CRLF);
+        count = 0;
+    }
+}
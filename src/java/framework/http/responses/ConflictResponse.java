@@ -0,0 +1,27 @@
+package framework.http.responses;
+
+import framework.http.Json;
+
+import java.util.Map;
+
+/**
+ * 409 Conflict, sent when an update carried a stale @Version.
+ */
+public class ConflictResponse extends Response {
+    private final String message;
+
+    public ConflictResponse(String message) {
+        this.message = message;
+        this.headers.add("Content-Type", "application/json");
+    }
+
+    @Override
+    protected String getStatus() {
+        return "409 Conflict";
+    }
+
+    @Override
+    protected String getBody() {
+        return Json.GSON.toJson(Map.of("error", message));
+    }
+}
@@ -1,27 +1,94 @@
 package framework.http.responses;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import framework.exceptions.ResponseAbortedException;
+import framework.http.Json;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Serializes an object to JSON straight into the socket's stream.
+ * Small bodies are rendered into a buffer reused by the thread, to send Content-Length,
+ * large collections and iterators are streamed with chunked transfer encoding,
+ * so memory per request stays bounded by the chunk size.
+ * A streamed body that fails halfway is not finished with the terminating zero-length chunk,
+ * the connection is aborted instead, so the client sees a truncated response rather than a valid partial array.
+ */
 public class JsonResponse extends Response {
-    private Gson gson;
+    private static final int STREAMING_THRESHOLD = 64;                  //collections larger than this are streamed
+    private static final int MAX_POOLED_BUFFER = 256 * 1024;            //larger buffers are not kept for the next response
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFERS = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(4 * 1024));
+
     private Object jsonObject;
 
     public JsonResponse(Object jsonObject) {
-        this.gson = new Gson();
         this.jsonObject = jsonObject;
+        this.headers.add("Content-Type", "application/json");
+    }
+
+    @Override
+    protected String getStatus() {
+        return "200 OK";
+    }
+
+    @Override
+    protected String getBody() {
+        return Json.GSON.toJson(this.jsonObject);
     }
 
     @Override
-    public String render() {
-        StringBuilder responseContext = new StringBuilder();
+    public void write(OutputStream out) throws IOException {
+        if (jsonObject instanceof Iterator<?> || (jsonObject instanceof Collection<?> collection && collection.size() > STREAMING_THRESHOLD)) {
+            headers.add("Transfer-Encoding", "chunked");
+            writeHead(out);
 
-        responseContext.append("HTTP/1.1 200 OK\n");
-        for (String key : this.headers.getKeys()) {
-            responseContext.append(key).append(":").append(this.headers.get(key)).append("\n");
+            ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+            try {
+                writeJson(new OutputStreamWriter(chunked, StandardCharsets.UTF_8));
+            } catch (RuntimeException | IOException e) {
+                /// 200 and part of the body are already sent, an error response now would be read as more body
+                throw new ResponseAbortedException("Response failed after its head was sent: " + e);
+            }
+            chunked.close();
+            return;
         }
-        responseContext.append("\n");
-        responseContext.append(this.gson.toJson(this.jsonObject));
 
-        return responseContext.toString();
+        ByteArrayOutputStream buffer = BUFFERS.get();
+        buffer.reset();
+        writeJson(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+
+        headers.add("Content-Length", String.valueOf(buffer.size()));
+        writeHead(out);
+        buffer.writeTo(out);
+
+        if (buffer.size() > MAX_POOLED_BUFFER) {
+            BUFFERS.remove();
+        }
+    }
+
+    private void writeJson(Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        if (jsonObject == null) {
+            jsonWriter.nullValue();
+        }
+        else if (jsonObject instanceof Iterator<?> iterator) {
+            jsonWriter.beginArray();
+            while (iterator.hasNext()) {
+                Object element = iterator.next();
+                Json.GSON.toJson(element, element.getClass(), jsonWriter);
+            }
+            jsonWriter.endArray();
+        }
+        else {
+            Json.GSON.toJson(jsonObject, jsonObject.getClass(), jsonWriter);
+        }
+        jsonWriter.flush();
     }
 }
@@ -0,0 +1,32 @@
+package framework.http.responses;
+
+import framework.http.Json;
+import framework.http.Method;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 405 Method Not Allowed, sent when the path has routes, but none for the request's method.
+ * Allow header lists the methods the path has routes for.
+ */
+public class MethodNotAllowedResponse extends Response {
+    private final String message;
+
+    public MethodNotAllowedResponse(String message, Set<Method> allowed) {
+        this.message = message;
+        this.headers.add("Allow", allowed.stream().map(Method::name).collect(Collectors.joining(", ")));
+        this.headers.add("Content-Type", "application/json");
+    }
+
+    @Override
+    protected String getStatus() {
+        return "405 Method Not Allowed";
+    }
+
+    @Override
+    protected String getBody() {
+        return Json.GSON.toJson(Map.of("error", message));
+    }
+}
@@ -0,0 +1,27 @@
+package framework.http.responses;
+
+import framework.http.Json;
+
+import java.util.Map;
+
+/**
+ * 404 Not Found, sent when no route has the request's path.
+ */
+public class NotFoundResponse extends Response {
+    private final String message;
+
+    public NotFoundResponse(String message) {
+        this.message = message;
+        this.headers.add("Content-Type", "application/json");
+    }
+
+    @Override
+    protected String getStatus() {
+        return "404 Not Found";
+    }
+
+    @Override
+    protected String getBody() {
+        return Json.GSON.toJson(Map.of("error", message));
+    }
+}
@@ -0,0 +1,27 @@
+package framework.http.responses;
+
+import framework.http.Json;
+
+import java.util.Map;
+
+/**
+ * 413 Content Too Large, sent before the body is read, so the connection is closed after it.
+ */
+public class PayloadTooLargeResponse extends Response {
+    private final String message;
+
+    public PayloadTooLargeResponse(String message) {
+        this.message = message;
+        this.headers.add("Content-Type", "application/json");
+    }
+
+    @Override
+    protected String getStatus() {
+        return "413 Content Too Large";
+    }
+
+    @Override
+    protected String getBody() {
+        return Json.GSON.toJson(Map.of("error", message));
+    }
+}
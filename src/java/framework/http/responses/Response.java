@@ -2,6 +2,10 @@ package framework.http.responses;
 
 import framework.http.Header;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
 public abstract class Response {
     protected Header headers;
 
@@ -9,7 +13,46 @@ public abstract class Response {
         headers = new Header();
     }
 
-    public abstract String render();
+    /**
+     * Status code and reason phrase, example 200 OK
+     */
+    protected abstract String getStatus();
+
+    /**
+     * Body of the response, empty by default.
+     */
+    protected String getBody() {
+        return "";
+    }
+
+    /**
+     * Writing the whole response to the client.
+     * Content-Length is always sent, so the client can find
+     * where the response ends on a keep-alive connection.
+     * @param out socket's output stream, not flushed here.
+     */
+    public void write(OutputStream out) throws IOException {
+        byte[] body = getBody().getBytes(StandardCharsets.UTF_8);
+        headers.add("Content-Length", String.valueOf(body.length));
+
+        writeHead(out);
+        out.write(body);
+    }
+
+    /**
+     * Writing status line and headers, followed by the empty line.
+     * @param out socket's output stream.
+     */
+    protected void writeHead(OutputStream out) throws IOException {
+        StringBuilder responseContext = new StringBuilder();
+        responseContext.append("HTTP/1.1 ").append(getStatus()).append("\r\n");
+        for (String key : this.headers.getKeys()) {
+            responseContext.append(key).append(": ").append(this.headers.get(key)).append("\r\n");
+        }
+        responseContext.append("\r\n");
+
+        out.write(responseContext.toString().getBytes(StandardCharsets.UTF_8));
+    }
 
     public Header getHeader() {
         return headers;
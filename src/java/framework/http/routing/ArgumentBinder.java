@@ -0,0 +1,12 @@
+package framework.http.routing;
+
+import framework.http.Request;
+
+/**
+ * Produces the value of one controller method parameter from a request.
+ * Chosen once per parameter when the route is compiled.
+ */
+@FunctionalInterface
+public interface ArgumentBinder {
+    Object bind(Request request);
+}
@@ -0,0 +1,102 @@
+package framework.http.routing;
+
+import framework.exceptions.FrameworkException;
+import framework.http.Method;
+import framework.http.Request;
+import framework.http.responses.Response;
+import framework.http.responses.SuccessfulResponse;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+/**
+ * One registered controller method, built once at startup.
+ * Router returns the same Route object for every request it matches.
+ * Controller method is pre-bound to its controller object as a MethodHandle,
+ * and every parameter has its binder, so a request only runs the binders and one invocation.
+ */
+public class Route {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final Method httpMethod;
+    private final String pattern;
+    private final List<String> pathVariables;     //names of {variables} in the pattern, in order
+    private final Object controller;
+    private final java.lang.reflect.Method method;
+    private final ArgumentBinder[] binders;       //one per method parameter
+    private final MethodHandle invoker;           //(Object[] args) -> Object, bound to controller
+
+    public Route(Method httpMethod, String pattern, List<String> pathVariables, Object controller, java.lang.reflect.Method method, ArgumentBinder[] binders) {
+        this.httpMethod = httpMethod;
+        this.pattern = pattern;
+        this.pathVariables = List.copyOf(pathVariables);
+        this.controller = controller;
+        this.method = method;
+        this.binders = binders.clone();
+
+        if (binders.length != method.getParameterCount()) {
+            throw new FrameworkException("Route: " + this + " has " + binders.length + " binders for " + method.getParameterCount() + " parameters");
+        }
+
+        try {
+            method.setAccessible(true);
+            this.invoker = MethodHandles.lookup().unreflect(method)
+                    .bindTo(controller)
+                    .asSpreader(Object[].class, binders.length)
+                    .asType(INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new FrameworkException("Method: " + method.getName() + " in class: " + controller.getClass().getName() + " is not accessible");
+        }
+    }
+
+    /**
+     * Calling the controller method for a request.
+     * @param request Request object received from the client.
+     * @return Response returned by the method, or SuccessfulResponse for methods returning nothing.
+     */
+    public Response invoke(Request request) throws InvocationTargetException {
+        Object[] args = new Object[binders.length];
+        for (int i = 0; i < binders.length; i++) {
+            args[i] = binders[i].bind(request);
+        }
+
+        Object result;
+        try {
+            result = invoker.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+
+        return result instanceof Response response ? response : new SuccessfulResponse();
+    }
+
+    public Method getHttpMethod() {
+        return httpMethod;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public List<String> getPathVariables() {
+        return pathVariables;
+    }
+
+    public Object getController() {
+        return controller;
+    }
+
+    public java.lang.reflect.Method getMethod() {
+        return method;
+    }
+
+    @Override
+    public String toString() {
+        return httpMethod + " " + pattern;
+    }
+}
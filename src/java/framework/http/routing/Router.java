@@ -0,0 +1,167 @@
+package framework.http.routing;
+
+import framework.exceptions.FrameworkException;
+import framework.http.Method;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Route table compiled from controller registrations.
+ * Paths are stored in a trie with one node per path segment,
+ * a segment written as {name} matches any value and binds it as a path variable.
+ * Static segments win over variables, every node keeps one route per HTTP method,
+ * so matching a request walks the path once, without regex or string building.
+ */
+public class Router {
+    private final RouteNode root = new RouteNode();
+
+    /**
+     * Registering a controller method.
+     * @param httpMethod HTTP method of the route.
+     * @param pattern path, example /employees/{id}
+     * @param controller Controller which has the method
+     * @param method Method for the route
+     * @param binders one binder for every parameter of the method
+     * @return compiled route.
+     */
+    public Route add(Method httpMethod, String pattern, Object controller, java.lang.reflect.Method method, ArgumentBinder[] binders) {
+        RouteNode node = root;
+        List<String> pathVariables = new ArrayList<>();
+
+        for (String segment : segments(pattern)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (node.variableChild == null) {
+                    node.variableChild = new RouteNode();
+                    node.variableName = name;
+                }
+                else if (!node.variableName.equals(name)) {
+                    throw new FrameworkException("Path: " + pattern + " names variable {" + name + "} where other routes use {" + node.variableName + "}");
+                }
+                pathVariables.add(name);
+                node = node.variableChild;
+            }
+            else {
+                node = node.staticChildren.computeIfAbsent(segment, key -> new RouteNode());
+            }
+        }
+
+        if (node.routes[httpMethod.ordinal()] != null) {
+            throw new FrameworkException("Path: " + httpMethod + " " + pattern + " already exists.");
+        }
+        Route route = new Route(httpMethod, pattern, pathVariables, controller, method, binders);
+        node.routes[httpMethod.ordinal()] = route;
+        return route;
+    }
+
+    /**
+     * Finding the route for a request.
+     * @param httpMethod HTTP method of the request.
+     * @param path request path without query.
+     * @param pathVariables filled with values of the route's {variables}.
+     * @return matched route, or null if there is none.
+     */
+    public Route match(Method httpMethod, String path, Map<String, String> pathVariables) {
+        return match(root, httpMethod.ordinal(), path, skipSlashes(path, 0), pathVariables);
+    }
+
+    private Route match(RouteNode node, int httpMethod, String path, int start, Map<String, String> pathVariables) {
+        if (start >= path.length()) {
+            return node.routes[httpMethod];
+        }
+
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        int next = skipSlashes(path, end);
+
+        RouteNode staticChild = node.staticChildren.get(path.substring(start, end));
+        if (staticChild != null) {
+            Route found = match(staticChild, httpMethod, path, next, pathVariables);
+            if (found != null) {
+                return found;
+            }
+        }
+
+        if (node.variableChild != null) {
+            Route found = match(node.variableChild, httpMethod, path, next, pathVariables);
+            if (found != null) {
+                pathVariables.put(node.variableName, path.substring(start, end));
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finding which methods a path has routes for, used when match found none for the request's method.
+     * @param path request path without query.
+     * @return methods with a route for the path, empty if the path is unknown.
+     */
+    public EnumSet<Method> allowedMethods(String path) {
+        EnumSet<Method> allowed = EnumSet.noneOf(Method.class);
+        allowedMethods(root, path, skipSlashes(path, 0), allowed);
+        return allowed;
+    }
+
+    private void allowedMethods(RouteNode node, String path, int start, EnumSet<Method> allowed) {
+        if (start >= path.length()) {
+            for (Route route : node.routes) {
+                if (route != null) {
+                    allowed.add(route.getHttpMethod());
+                }
+            }
+            return;
+        }
+
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        int next = skipSlashes(path, end);
+
+        RouteNode staticChild = node.staticChildren.get(path.substring(start, end));
+        if (staticChild != null) {
+            allowedMethods(staticChild, path, next, allowed);
+        }
+        if (node.variableChild != null) {
+            allowedMethods(node.variableChild, path, next, allowed);
+        }
+    }
+
+    private static int skipSlashes(String path, int index) {
+        while (index < path.length() && path.charAt(index) == '/') {
+            index++;
+        }
+        return index;
+    }
+
+    private static List<String> segments(String pattern) {
+        List<String> segments = new ArrayList<>();
+        int start = skipSlashes(pattern, 0);
+        while (start < pattern.length()) {
+            int end = pattern.indexOf('/', start);
+            if (end < 0) {
+                end = pattern.length();
+            }
+            segments.add(pattern.substring(start, end));
+            start = skipSlashes(pattern, end);
+        }
+        return segments;
+    }
+
+    /**
+     * One path segment in the trie.
+     */
+    private static class RouteNode {
+        private final Map<String, RouteNode> staticChildren = new HashMap<>();
+        private RouteNode variableChild;
+        private String variableName;
+        private final Route[] routes = new Route[Method.values().length];
+    }
+}
@@ -1,16 +1,43 @@
 package framework.interfaces;
 
+import framework.database.PageRequest;
+
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public interface FrameworkRepository<T> {
     /// GET ONE
     T get(Long id);
-    /// GET ALL
+    /// GET ALL, immutable snapshot
     List<T> getAll();
-    /// ADD ONE
+    /// ITERATE ALL, rows are read while iterating
+    Iterator<T> iterateAll();
+    /// GET PAGE, skipping offset rows
+    List<T> getPage(int offset, int limit);
+    /// GET PAGE, rows with id greater than after
+    List<T> getAfter(Long after, int limit);
+    /// GET PAGE, only the selected fields of each row
+    List<Map<String, Object>> select(PageRequest page);
+    /// ADD ONE, a copy is stored
     void add(T object);
-    /// UPDATE ONE
+    /// ADD ONE, the object itself is stored, nothing may change it afterwards (an entity bound from a request)
+    void addOwned(T object);
+    /// ADD MANY, in one batch
+    void addAll(List<T> objects);
+    /// ADD MANY, in one batch, the objects themselves are stored
+    void addAllOwned(List<T> objects);
+    /// UPDATE ONE, a copy is stored
     void update(Long id, T object);
+    /// UPDATE ONE, the object itself is stored
+    void updateOwned(Long id, T object);
+    /// UPDATE MANY, id -> object, in one batch
+    void updateAll(Map<Long, T> objects);
+    /// UPDATE MANY, id -> object, in one batch, the objects themselves are stored
+    void updateAllOwned(Map<Long, T> objects);
     /// DELETE ONE
     void delete(Long id);
+    /// DELETE MANY, in one batch
+    void deleteAll(Collection<Long> ids);
 }
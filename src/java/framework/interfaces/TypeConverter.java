@@ -0,0 +1,49 @@
+package framework.interfaces;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Converts one type of entity field from and to JSON.
+ * A class annotated with @Component that implements this interface is registered
+ * before entities are, and is used for every field of its type:
+ * in request bodies, in responses and in the write-ahead log and snapshots.
+ * By default the value is a JSON string, read with parse and written with format.
+ * @param <T> type of the field.
+ */
+public interface TypeConverter<T> {
+    /**
+     * @return type this converter is for.
+     */
+    Class<T> getType();
+
+    /**
+     * @param text value as text, never null.
+     * @return converted value.
+     */
+    T parse(String text);
+
+    /**
+     * @param value never null.
+     * @return value as text, parse(format(value)) must give the same value back.
+     */
+    String format(T value);
+
+    /**
+     * @param in JSON reader positioned at a value that is not null.
+     * @return converted value.
+     */
+    default T read(JsonReader in) throws IOException {
+        return parse(in.nextString());
+    }
+
+    /**
+     * @param out JSON writer.
+     * @param value never null.
+     */
+    default void write(JsonWriter out, T value) throws IOException {
+        out.value(format(value));
+    }
+}
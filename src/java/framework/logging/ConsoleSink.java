@@ -0,0 +1,43 @@
+package framework.logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Default sink, writes lines to standard output through a buffer,
+ * flushed whenever the log has nothing more to write.
+ */
+public class ConsoleSink implements LogSink {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 16 * 1024);
+    private final StringBuilder line = new StringBuilder(256);
+
+    @Override
+    public void write(LogLevel level, long timestamp, String thread, String source, String message) {
+        line.setLength(0);
+        TIME.formatTo(Instant.ofEpochMilli(timestamp), line);
+        line.append(' ').append(level).append(" [").append(thread).append("] ")
+                .append(source).append(" - ").append(message).append(System.lineSeparator());
+        try {
+            out.append(line);
+        }
+        catch (IOException ignored) {
+            /// nowhere to report it
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        }
+        catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package framework.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log channel of the framework.
+ * Messages below the level set by framework.log.level (default INFO) are dropped
+ * before anything is built. The rest are put into a ring buffer and formatted and written
+ * by one background thread, so logging never waits for the console or a lock.
+ * When the buffer is full the message is dropped and counted instead of blocking,
+ * the writer reports how many were dropped.
+ * Message arguments are put in place of {} by the writer thread.
+ * Destination is pluggable with setSink, standard output by default.
+ */
+public final class Log {
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Integer.getInteger("framework.log.bufferSize", 8192)));
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong head = new AtomicLong();       //next slot a producer claims
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long tail;                               //next slot the writer reads, written only by the writer
+    private static volatile boolean writerWaiting;
+
+    private static volatile LogLevel level = LogLevel.valueOf(System.getProperty("framework.log.level", "INFO").toUpperCase());
+    private static volatile LogSink sink = new ConsoleSink();
+
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(Log::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "log-shutdown"));
+    }
+
+    private Log() {
+    }
+
+    public static void setLevel(LogLevel level) {
+        Log.level = level;
+    }
+
+    public static LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * Replacing where log lines go, lines already queued are written to the new sink.
+     * @param sink new destination.
+     */
+    public static void setSink(LogSink sink) {
+        Log.sink = sink;
+    }
+
+    /**
+     * Cheap check for callers that would otherwise build expensive arguments.
+     * @param level of the message.
+     * @return true if a message of this level would be written.
+     */
+    public static boolean isEnabled(LogLevel level) {
+        return level.ordinal() >= Log.level.ordinal() && level != LogLevel.OFF;
+    }
+
+    public static void trace(String source, String message, Object... args) {
+        log(LogLevel.TRACE, source, message, args);
+    }
+
+    public static void debug(String source, String message, Object... args) {
+        log(LogLevel.DEBUG, source, message, args);
+    }
+
+    public static void info(String source, String message, Object... args) {
+        log(LogLevel.INFO, source, message, args);
+    }
+
+    public static void warn(String source, String message, Object... args) {
+        log(LogLevel.WARN, source, message, args);
+    }
+
+    public static void error(String source, String message, Object... args) {
+        log(LogLevel.ERROR, source, message, args);
+    }
+
+    /**
+     * Queuing a message, never blocks.
+     * @param level of the message.
+     * @param source component that logs it.
+     * @param message text, every {} is replaced by the next argument.
+     * @param args arguments of the message.
+     */
+    public static void log(LogLevel level, String source, String message, Object... args) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        Entry entry = new Entry(level, System.currentTimeMillis(), Thread.currentThread().getName(), source, message, args);
+
+        while (true) {
+            long slot = head.get();
+            if (slot - tail >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (head.compareAndSet(slot, slot + 1)) {
+                ring.lazySet((int) (slot & MASK), entry);
+                break;
+            }
+        }
+        if (writerWaiting) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            if (!writeNext()) {
+                sink.flush();
+                writerWaiting = true;
+                if (ring.get((int) (tail & MASK)) == null) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                writerWaiting = false;
+            }
+        }
+    }
+
+    /**
+     * Writing everything queued, called once more at shutdown.
+     */
+    private static synchronized void drain() {
+        while (writeNext()) {
+            /// keep writing
+        }
+        sink.flush();
+    }
+
+    /**
+     * @return false if there was nothing to write.
+     */
+    private static synchronized boolean writeNext() {
+        long position = tail;
+        Entry entry = ring.get((int) (position & MASK));
+        if (entry == null) {
+            if (head.get() != position) {
+                Thread.onSpinWait();        //slot is claimed, its producer is about to fill it
+                return true;
+            }
+            return false;
+        }
+        ring.set((int) (position & MASK), null);
+        tail = position + 1;
+
+        LogSink current = sink;
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            current.write(LogLevel.WARN, System.currentTimeMillis(), "log-writer", "Log", lost + " messages dropped, log buffer was full");
+        }
+        try {
+            current.write(entry.level, entry.timestamp, entry.thread, entry.source, format(entry.message, entry.args));
+        }
+        catch (RuntimeException e) {
+            /// a broken sink or argument must not stop the writer
+        }
+        return true;
+    }
+
+    private static String format(String message, Object[] args) {
+        if (args == null || args.length == 0) {
+            return message;
+        }
+        StringBuilder text = new StringBuilder(message.length() + 32 * args.length);
+        int start = 0;
+        int argument = 0;
+        while (true) {
+            int placeholder = message.indexOf("{}", start);
+            if (placeholder < 0 || argument == args.length) {
+                break;
+            }
+            text.append(message, start, placeholder).append(args[argument++]);
+            start = placeholder + 2;
+        }
+        return text.append(message, start, message.length()).toString();
+    }
+
+    /**
+     * One queued message, formatted only by the writer.
+     */
+    private static class Entry {
+        private final LogLevel level;
+        private final long timestamp;
+        private final String thread;
+        private final String source;
+        private final String message;
+        private final Object[] args;
+
+        private Entry(LogLevel level, long timestamp, String thread, String source, String message, Object[] args) {
+            this.level = level;
+            this.timestamp = timestamp;
+            this.thread = thread;
+            this.source = source;
+            this.message = message;
+            this.args = args;
+        }
+    }
+}
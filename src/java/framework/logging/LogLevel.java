@@ -0,0 +1,13 @@
+package framework.logging;
+
+/**
+ * Levels of the framework's log, a message is written if its level is at least the configured one.
+ */
+public enum LogLevel {
+    TRACE,
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
@@ -0,0 +1,23 @@
+package framework.logging;
+
+/**
+ * Destination of log lines, called only from the log's writer thread,
+ * so an implementation does not have to be thread-safe and may block.
+ */
+@FunctionalInterface
+public interface LogSink {
+    /**
+     * @param level of the message.
+     * @param timestamp when the message was logged, in milliseconds.
+     * @param thread name of the thread that logged it.
+     * @param source component that logged it.
+     * @param message formatted message.
+     */
+    void write(LogLevel level, long timestamp, String thread, String source, String message);
+
+    /**
+     * Called when the writer has nothing more to write for now.
+     */
+    default void flush() {
+    }
+}
@@ -1,7 +1,9 @@
 package playground;
 
+import framework.annotations.components.Application;
 import playground.components.Calculator;
 
+@Application(packages = "playground")
 public class Main {
 
     public static void main(String[] args) {
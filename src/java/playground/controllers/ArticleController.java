@@ -11,8 +11,13 @@ import playground.services.ArticleService;
 
 @Controller( path = "/articles")
 public class ArticleController {
-    private ArticleRepository articleRepository;
-    private ArticleService articleService;
+    private final ArticleRepository articleRepository;
+    private final ArticleService articleService;
+
+    public ArticleController(ArticleRepository articleRepository, ArticleService articleService) {
+        this.articleRepository = articleRepository;
+        this.articleService = articleService;
+    }
 
     @Get(path = "/all")
     public Response getAllArticles(){
@@ -21,7 +26,7 @@ public class ArticleController {
 
     @Post(path = "")
     public void addArticle(Article article){
-        articleRepository.add(article);
+        articleRepository.addOwned(article);
         articleService.calculator.add(1, 2);
         articleService.calculator.subtract(5,4);
     }
@@ -5,6 +5,7 @@ import framework.annotations.methodes.Delete;
 import framework.annotations.methodes.Get;
 import framework.annotations.methodes.Post;
 import framework.annotations.methodes.Put;
+import framework.database.PageRequest;
 import framework.http.responses.JsonResponse;
 import framework.http.responses.Response;
 import playground.entities.Employee;
@@ -12,6 +13,7 @@ import playground.repositories.EmployeeRepository;
 import playground.services.EmployeeService;
 
 import java.util.List;
+import java.util.Map;
 
 @Controller(path = "/employees")
 public class EmployeeController {
@@ -21,29 +23,65 @@ public class EmployeeController {
     @Post(path = "/add")
     public void addEmployee(Employee employee){
         employee.setName(employee.getName().toUpperCase());
-        employeeRepository.add(employee);
+        employeeRepository.addOwned(employee);
         employeeService.sayHello();
     }
 
+    @Post(path = "/addAll")
+    public void addEmployees(List<Employee> employees){
+        employeeRepository.addAllOwned(employees);
+    }
+
     @Get(path = "/getAllEmployees")
     public Response getAllEmployees(){
         List<Employee> employeeList = employeeRepository.getAll();
         return new JsonResponse(employeeList);
     }
 
+    @Get(path = "/stream")
+    public Response streamEmployees(){
+        return new JsonResponse(employeeRepository.iterateAll());
+    }
+
+    @Get(path = "/page")
+    public Response getEmployeePage(PageRequest page){
+        return new JsonResponse(employeeRepository.select(page));
+    }
+
     @Get(path = "/getOneEmployee")
     public Response getOneEmployee(Long id){
         Employee employee = employeeRepository.get(id);
         return new JsonResponse(employee);
     }
 
+    @Get(path = "/{id}")
+    public Response getEmployee(Long id){
+        return new JsonResponse(employeeRepository.get(id));
+    }
+
+    @Get(path = "/{id}/namesakes")
+    public Response getNamesakes(Long id){
+        Employee employee = employeeRepository.get(id);
+        return new JsonResponse(employee == null ? List.of() : employeeRepository.findByName(employee.getName()));
+    }
+
     @Delete(path = "/deleteEmployee")
     public void deleteEmployee(Long id){
         employeeRepository.delete(id);
     }
 
+    @Delete(path = "/deleteAll")
+    public void deleteEmployees(List<Long> ids){
+        employeeRepository.deleteAll(ids);
+    }
+
     @Put(path = "/changeEmployee")
     public void changeEmployee(Long id, Employee employee){
-        employeeRepository.update(id, employee);
+        employeeRepository.updateOwned(id, employee);
+    }
+
+    @Put(path = "/changeAll")
+    public void changeEmployees(Map<Long, Employee> employees){
+        employeeRepository.updateAllOwned(employees);
     }
 }
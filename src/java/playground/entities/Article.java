@@ -3,11 +3,14 @@ package playground.entities;
 import framework.annotations.databases.Entity;
 import framework.annotations.databases.Id;
 
+import java.time.LocalDate;
+
 @Entity(tableName = "articles")
 public class Article {
     @Id
     private Long id;
     private String title;
+    private LocalDate published;
 
     public Long getId() {
         return id;
@@ -25,11 +28,20 @@ public class Article {
         this.title = title;
     }
 
+    public LocalDate getPublished() {
+        return published;
+    }
+
+    public void setPublished(LocalDate published) {
+        this.published = published;
+    }
+
     @Override
     public String toString() {
         return "Article{" +
                 "id=" + id +
                 ", title='" + title + '\'' +
+                ", published=" + published +
                 '}';
     }
 }
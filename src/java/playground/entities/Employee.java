@@ -2,13 +2,18 @@ package playground.entities;
 
 import framework.annotations.databases.Entity;
 import framework.annotations.databases.Id;
+import framework.annotations.databases.Indexed;
+import framework.annotations.databases.Version;
 
 @Entity(tableName = "employees")
 public class Employee {
     @Id
     private Long id;
+    @Indexed
     private String name;
     private String email;
+    @Version
+    private Long version;
 
     public Long getId() {
         return id;
@@ -34,12 +39,21 @@ public class Employee {
         this.email = email;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Employee{" +
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", email='" + email + '\'' +
+                ", version=" + version +
                 '}';
     }
 }
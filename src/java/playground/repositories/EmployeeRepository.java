@@ -4,6 +4,9 @@ import framework.annotations.components.Repository;
 import framework.interfaces.FrameworkRepository;
 import playground.entities.Employee;
 
+import java.util.List;
+
 @Repository(entity = Employee.class)
 public interface EmployeeRepository extends FrameworkRepository<Employee> {
+    List<Employee> findByName(String name);
 }
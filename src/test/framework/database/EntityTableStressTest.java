@@ -0,0 +1,228 @@
+package framework.database;
+
+import framework.annotations.databases.Entity;
+import framework.annotations.databases.Id;
+import framework.annotations.databases.Indexed;
+import framework.annotations.databases.Version;
+import framework.exceptions.ConflictException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test of EntityTable under contention, many threads writing one table at once.
+ * Checks that ids stay unique, no row is lost, @Version updates lose no increment,
+ * and getAll snapshots never show a half applied write.
+ * The tree has no test framework, so it is a main that fails with an AssertionError:
+ *   javac -g -cp "lib/*" -d out $(find src/java src/test -name '*.java')
+ *   java -cp "out:lib/*" framework.database.EntityTableStressTest [threads] [rows per thread]
+ */
+public class EntityTableStressTest {
+    private static final int BATCH = 16;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        concurrentInserts(threads, rows);
+        concurrentVersionedUpdates(threads, rows / 100);
+        snapshotsDuringWrites(threads, rows);
+        System.out.println("EntityTableStressTest passed with " + threads + " threads");
+    }
+
+    /**
+     * Every thread inserts its rows, half of them one by one and half in batches,
+     * while ids are handed out concurrently by nextId and reserveIds.
+     */
+    private static void concurrentInserts(int threads, int rows) throws Exception {
+        EntityTable table = new EntityTable(EntityMetadata.of(Counter.class));
+        runTogether(threads, thread -> {
+            String name = "thread-" + thread;
+            int inserted = 0;
+            while (inserted < rows / 2) {
+                table.insert(new Counter(table.nextId(), name));
+                inserted++;
+            }
+            while (inserted < rows) {
+                int count = Math.min(BATCH, rows - inserted);
+                long first = table.reserveIds(count);
+                List<Object> batch = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    batch.add(new Counter(first + i, name));
+                }
+                table.insertAll(batch);
+                inserted += count;
+            }
+        });
+
+        int expected = threads * rows;
+        List<Object> all = table.getAll();
+        check(table.size() == expected, "table has " + table.size() + " rows, expected " + expected);
+        check(all.size() == expected, "getAll returned " + all.size() + " rows, expected " + expected);
+        check(table.peekNextId() == expected + 1, "next id is " + table.peekNextId() + ", expected " + (expected + 1));
+
+        long previous = 0;
+        for (Object row : all) {
+            long id = ((Counter) row).id;
+            check(id > previous, "ids are not unique and increasing: " + id + " after " + previous);
+            previous = id;
+        }
+        for (int thread = 0; thread < threads; thread++) {
+            int found = table.findEqual("name", "thread-" + thread).size();
+            check(found == rows, "index has " + found + " rows of thread-" + thread + ", expected " + rows);
+        }
+        System.out.println("Inserts: " + expected + " rows from " + threads + " threads, ids unique, none lost");
+    }
+
+    /**
+     * Every thread increments the same row, reading it and retrying whenever its version is stale.
+     */
+    private static void concurrentVersionedUpdates(int threads, int increments) throws Exception {
+        EntityTable table = new EntityTable(EntityMetadata.of(Counter.class));
+        Long id = table.nextId();
+        table.insert(new Counter(id, "shared"));
+
+        AtomicInteger conflicts = new AtomicInteger();
+        runTogether(threads, thread -> {
+            for (int i = 0; i < increments; i++) {
+                while (true) {
+                    Counter current = (Counter) table.get(id);
+                    Counter next = new Counter(id, current.name);
+                    next.value = current.value + 1;
+                    next.version = current.version;
+                    try {
+                        table.update(id, next);
+                        break;
+                    } catch (ConflictException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        Counter counter = (Counter) table.get(id);
+        long expected = (long) threads * increments;
+        check(counter.value == expected, "counter is " + counter.value + ", expected " + expected + ", increments were lost");
+        check(counter.version == expected + 1, "version is " + counter.version + ", expected " + (expected + 1));
+        System.out.println("Updates: " + expected + " increments of one row, " + conflicts.get() + " conflicts retried, none lost");
+    }
+
+    /**
+     * Half of the threads insert and delete rows in pairs, the other half take snapshots meanwhile.
+     * A snapshot must be sorted by id, must never change once taken, and must never hold one row of a pair without the other.
+     */
+    private static void snapshotsDuringWrites(int threads, int rows) throws Exception {
+        EntityTable table = new EntityTable(EntityMetadata.of(Counter.class));
+        int writers = Math.max(1, threads / 2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger snapshots = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+
+        runTogether(threads, thread -> {
+            if (thread < writers) {
+                try {
+                    for (int i = 0; i < rows / 2; i++) {
+                        long first = table.reserveIds(2);
+                        table.insertAll(List.of(new Counter(first, "pair"), new Counter(first + 1, "pair")));
+                        if (i % 2 == 0) {
+                            check(table.deleteAll(List.of(first, first + 1)) == 2, "pair " + first + " was not deleted whole");
+                        }
+                    }
+                } finally {
+                    if (finished.incrementAndGet() == writers) {
+                        writing.set(false);
+                    }
+                }
+                return;
+            }
+
+            while (writing.get()) {
+                List<Object> snapshot = table.getAll();
+                int size = snapshot.size();
+                Set<Long> ids = new HashSet<>();
+                long previous = 0;
+                for (Object row : snapshot) {
+                    long id = ((Counter) row).id;
+                    check(id > previous, "snapshot is not in id order: " + id + " after " + previous);
+                    previous = id;
+                    ids.add(id);
+                }
+                for (long id : ids) {
+                    long other = id % 2 == 1 ? id + 1 : id - 1;
+                    check(ids.contains(other), "snapshot has row " + id + " without " + other + " of the same batch");
+                }
+                check(snapshot.size() == size, "snapshot changed while it was read");
+                snapshots.incrementAndGet();
+            }
+        });
+
+        int expected = writers * (rows / 2 / 2) * 2;
+        check(table.size() == expected, "table has " + table.size() + " rows, expected " + expected);
+        System.out.println("Snapshots: " + snapshots.get() + " taken during " + writers * rows + " writes, none saw a half applied batch");
+    }
+
+    /**
+     * Starting all threads at the same moment, so they really contend for the table.
+     */
+    private static void runTogether(int threads, Task task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int number = thread;
+                Callable<Void> callable = () -> {
+                    start.await();
+                    task.run(number);
+                    return null;
+                };
+                futures.add(pool.submit(callable));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    @Entity(tableName = "stress_counters")
+    public static class Counter {
+        @Id
+        private Long id;
+        @Indexed
+        private String name;
+        private long value;
+        @Version
+        private Long version;
+
+        public Counter() {
+        }
+
+        private Counter(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}